@@ -0,0 +1,75 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.tree.TreePath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stanio.diffview.swing.tree.FilteredTreeModel;
+import stanio.diffview.udiff.SyntheticDiff;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileTreeBenchmark {
+
+    @Param({ "100", "10000" })
+    int fileCount;
+
+    String[] paths;
+
+    FilteredTreeModel filteredTree;
+
+    @Setup
+    public void setUp() {
+        paths = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            paths[i] = SyntheticDiff.path(i);
+        }
+        filteredTree = new FilteredTreeModel(addPaths());
+    }
+
+    private FileTreeModel addPaths() {
+        FileTreeModel fileTree = new FileTreeModel();
+        fileTree.startLoading();
+        for (String path : paths) {
+            fileTree.addPath(path);
+        }
+        fileTree.doneLoading();
+        return fileTree;
+    }
+
+    @Benchmark
+    public FileTreeModel addPath() {
+        return addPaths();
+    }
+
+    @Benchmark
+    public FilteredTreeModel filter() {
+        filteredTree.filter(FileTreeBenchmark::matches);
+        return filteredTree;
+    }
+
+    private static boolean matches(TreePath path) {
+        return path.getLastPathComponent().toString().contains("7");
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stanio.diffview.udiff.SyntheticDiff;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DocumentBenchmark {
+
+    @Param({ "1000", "100000" })
+    int lineCount;
+
+    PlainDocument document;
+
+    char[] buffer;
+
+    @Setup
+    public void setUp() throws BadLocationException {
+        document = new PlainDocument(new CompactContent());
+        document.insertString(0, SyntheticDiff.generate(lineCount), null);
+        buffer = new char[8 * 1024];
+    }
+
+    @Benchmark
+    public int segmentCharAt() {
+        DocumentSegment segment = new DocumentSegment(document);
+        int newlines = 0;
+        for (int i = 0, len = segment.length(); i < len; i++) {
+            if (segment.charAt(i) == '\n') newlines++;
+        }
+        return newlines;
+    }
+
+    @Benchmark
+    public long readerRead() throws IOException {
+        long total = 0;
+        try (DocumentReader reader = new DocumentReader(document)) {
+            int count;
+            while ((count = reader.read(buffer, 0, buffer.length)) > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+}
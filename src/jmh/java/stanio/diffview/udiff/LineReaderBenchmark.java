@@ -0,0 +1,59 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReaderBenchmark {
+
+    @Param({ "1000", "100000" })
+    int lineCount;
+
+    String text;
+
+    @Setup
+    public void setUp() {
+        text = SyntheticDiff.generate(lineCount);
+    }
+
+    @Benchmark
+    public void nextLine(Blackhole blackhole) throws IOException {
+        LineReader reader = new LineReader(new StringReader(text));
+        String line;
+        while ((line = reader.nextLine()) != null) {
+            blackhole.consume(line);
+        }
+    }
+
+    @Benchmark
+    public void next(Blackhole blackhole) throws IOException {
+        LineReader reader = new LineReader(new StringReader(text));
+        while (reader.next()) {
+            blackhole.consume(reader.lineEnd());
+        }
+    }
+
+}
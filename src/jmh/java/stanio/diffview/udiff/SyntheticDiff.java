@@ -0,0 +1,65 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+/**
+ * Generates synthetic unified diff input for the benchmarks.
+ */
+public final class SyntheticDiff {
+
+    static final int FILE_LINES = 100;
+
+    private SyntheticDiff() {}
+
+    /**
+     * @param   index  file entry index
+     * @return  a path spread over a few levels of directories
+     */
+    public static String path(int index) {
+        return "src/module" + (index % 10) + "/pkg" + (index % 37)
+                + "/sub" + (index % 5) + "/File" + index + ".java";
+    }
+
+    /**
+     * Git-style diff of file entries of about {@value #FILE_LINES} lines
+     * each, with hunks of context, removed, and added lines.
+     *
+     * @param   lineCount  approximate number of lines to generate
+     * @return  the diff text
+     */
+    public static String generate(int lineCount) {
+        StringBuilder buf = new StringBuilder(lineCount * 48);
+        int lines = 0;
+        for (int file = 0; lines < lineCount; file++) {
+            String path = path(file);
+            buf.append("diff --git a/").append(path).append(" b/").append(path).append('\n')
+               .append("index 1234567..89abcde 100644\n")
+               .append("--- a/").append(path).append('\n')
+               .append("+++ b/").append(path).append('\n');
+            lines += 4;
+            for (int hunk = 0; hunk < 4; hunk++) {
+                int start = hunk * 100 + 1;
+                buf.append("@@ -").append(start).append(",20 +").append(start)
+                   .append(",20 @@ class File").append(file).append(" {\n");
+                lines++;
+                for (int i = 0; i < 20; i++) {
+                    if (i % 5 == 2) {
+                        buf.append("-        int value").append(i)
+                           .append(" = compute(").append(i).append(");\n");
+                        buf.append("+        long value").append(i)
+                           .append(" = compute(").append(i).append(", true);\n");
+                        lines += 2;
+                    } else if (i % 5 != 3) {
+                        buf.append("         // Context line ").append(i)
+                           .append(" of the generated source\n");
+                        lines++;
+                    }
+                }
+            }
+        }
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class UDiffEditorKitBenchmark {
+
+    @Param({ "1000", "100000" })
+    int lineCount;
+
+    String text;
+
+    UDiffEditorKit editorKit;
+
+    @Setup
+    public void setUp() {
+        text = SyntheticDiff.generate(lineCount);
+        editorKit = new UDiffEditorKit();
+    }
+
+    @Benchmark
+    public UDiffDocument read() throws Exception {
+        UDiffDocument document = new UDiffDocument();
+        editorKit.read(new StringReader(text), document, 0);
+        return document;
+    }
+
+}
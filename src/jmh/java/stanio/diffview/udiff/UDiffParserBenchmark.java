@@ -0,0 +1,52 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UDiffParserBenchmark {
+
+    @Param({ "1000", "100000" })
+    int lineCount;
+
+    @Param({ "false", "true" })
+    boolean useRegex;
+
+    String[] lines;
+
+    @Setup
+    public void setUp() {
+        lines = SyntheticDiff.generate(lineCount).split("(?<=\n)");
+    }
+
+    @Benchmark
+    public void update(Blackhole blackhole) {
+        UDiffParser parser = new UDiffParser(useRegex);
+        for (String line : lines) {
+            parser.update(line);
+            blackhole.consume(parser.getType());
+        }
+    }
+
+}
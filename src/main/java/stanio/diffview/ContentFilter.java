@@ -0,0 +1,127 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import javax.swing.SwingWorker;
+import javax.swing.text.Element;
+
+import stanio.diffview.swing.text.DocumentSegment;
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.ParseResult.Type;
+import stanio.diffview.udiff.UDiffDocument;
+
+/**
+ * Finds the file entries of a diff document with added or removed lines
+ * matching a pattern.
+ * <p>
+ * The file entries are searched in parallel, in the common {@code
+ * ForkJoinPool}, and the paths of the matching ones are streamed to the
+ * event dispatch thread as found, not necessarily in document order.
+ * Only the file entries indexed when the search starts are searched, and
+ * just their lines already in the document, as the line index may be
+ * ahead of the document paragraphs.</p>
+ */
+class ContentFilter extends SwingWorker<Void, String> {
+
+    private final UDiffDocument document;
+
+    private final LineIndex lines;
+
+    private final Pattern pattern;
+
+    private final int fileCount;
+
+    private final int lineCount;
+
+    private final Consumer<List<String>> matched;
+
+    /**
+     * @param   document  the document to search
+     * @param   pattern  the pattern to find (not spanning lines)
+     * @param   matched  receives the paths of the matching file entries,
+     *          in the event dispatch thread
+     */
+    ContentFilter(UDiffDocument document,
+                  Pattern pattern,
+                  Consumer<List<String>> matched) {
+        this.document = document;
+        this.lines = document.getLineIndex();
+        this.pattern = pattern;
+        this.fileCount = lines.getFileCount();
+        this.lineCount = lines.size();
+        this.matched = matched;
+    }
+
+    @Override
+    protected Void doInBackground() {
+        IntStream.range(0, fileCount).parallel().forEach(entry -> {
+            if (isCancelled()) return;
+
+            String path = lines.getFile(entry);
+            if (path != null && matches(entry)) {
+                publish(path);
+            }
+        });
+        return null;
+    }
+
+    @Override
+    protected void process(List<String> paths) {
+        if (!isCancelled()) {
+            matched.accept(paths);
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) return;
+
+        try {
+            get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param   entry  file entry index
+     * @return  whether an added, or removed line of the given file entry
+     *          matches the pattern
+     */
+    boolean matches(int entry) {
+        int start = lines.getFileLine(entry);
+        int end = (entry + 1 < fileCount) ? lines.getFileLine(entry + 1)
+                                          : lineCount;
+        boolean[] found = { false };
+        document.render(() -> {
+            Element root = document.getDefaultRootElement();
+            // Excluding the trailing (incomplete) paragraph
+            int available = Math.min(end, root.getElementCount() - 1);
+            DocumentSegment text = new DocumentSegment(document);
+            Matcher matcher = pattern.matcher(text);
+            for (int line = start; line < available && !found[0]; line++) {
+                Type type = lines.getType(line);
+                if (type != Type.ADDED && type != Type.REMOVED) continue;
+
+                Element paragraph = root.getElement(line);
+                // Excluding the '+'/'-' marker and the line terminator
+                int lineStart = paragraph.getStartOffset() + 1;
+                int lineEnd = Math.min(text.length(), paragraph.getEndOffset() - 1);
+                if (lineStart < lineEnd) {
+                    found[0] = matcher.region(lineStart, lineEnd).find();
+                }
+            }
+        });
+        return found[0];
+    }
+
+}
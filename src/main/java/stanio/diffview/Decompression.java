@@ -0,0 +1,234 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Detects gzip and zip compressed input by its leading magic bytes, and
+ * decompresses it as a stream.
+ * <p>
+ * The header is tested on the first read of the resulting stream, and the
+ * decompression happens in the thread reading it &ndash; the {@code
+ * ReadAheadReader} thread, when loading, as long as nothing reads the
+ * stream before.  The files of a zip archive are read one after another,
+ * as a single stream.</p>
+ *
+ * @see  ReadAheadReader
+ */
+final class Decompression {
+
+    private static final int MAGIC_LENGTH = 4;
+
+    private Decompression() {}
+
+    /**
+     * @param   file  the file to test
+     * @return  {@code true} if the file starts with a gzip or zip header
+     * @throws  IOException  if an I/O error occurs
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return isCompressed(in.readNBytes(MAGIC_LENGTH));
+        }
+    }
+
+    private static boolean isCompressed(byte[] magic) {
+        return isGzip(magic) || isZip(magic);
+    }
+
+    private static boolean isGzip(byte[] magic) {
+        return magic.length >= 2
+                && (magic[0] & 0xFF) == 0x1F
+                && (magic[1] & 0xFF) == 0x8B;
+    }
+
+    private static boolean isZip(byte[] magic) {
+        return magic.length >= 4
+                && magic[0] == 'P' && magic[1] == 'K'
+                && magic[2] == 3 && magic[3] == 4;
+    }
+
+    /**
+     * Returns a stream decompressing the given one if it starts with a gzip
+     * or zip header, or passing the input as is, otherwise.  The header is
+     * tested on the first read from the returned stream.
+     *
+     * @param   in  the input stream
+     * @return  a stream of the decompressed input
+     */
+    static InputStream decompressing(InputStream in) {
+        return new SniffingStream(in);
+    }
+
+    private static InputStream sniffDecompressing(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+        buffered.mark(MAGIC_LENGTH);
+        byte[] magic = buffered.readNBytes(MAGIC_LENGTH);
+        buffered.reset();
+
+        if (isGzip(magic)) {
+            return new GZIPInputStream(buffered, 64 * 1024);
+        } else if (isZip(magic)) {
+            return new ZipEntriesStream(new ZipInputStream(buffered));
+        }
+        return buffered;
+    }
+
+
+    /**
+     * Picks the decompression of the underlying stream on its first read.
+     */
+    private static class SniffingStream extends FilterInputStream {
+
+        private boolean sniffed;
+
+        SniffingStream(InputStream in) {
+            super(in);
+        }
+
+        private InputStream sniffed() throws IOException {
+            if (!sniffed) {
+                in = sniffDecompressing(in);
+                sniffed = true;
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return sniffed().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return sniffed().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return sniffed().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return sniffed ? in.available() : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    } // class SniffingStream
+
+
+    /**
+     * Reads the file entries of a zip archive one after another.
+     */
+    private static class ZipEntriesStream extends FilterInputStream {
+
+        private final ZipInputStream zip;
+
+        private boolean inEntry;
+
+        ZipEntriesStream(ZipInputStream zip) {
+            super(zip);
+            this.zip = zip;
+        }
+
+        private boolean nextEntry() throws IOException {
+            ZipEntry entry;
+            do {
+                entry = zip.getNextEntry();
+            } while (entry != null && entry.isDirectory());
+            inEntry = (entry != null);
+            return inEntry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+
+            if (!inEntry && !nextEntry()) return -1;
+
+            int count;
+            while ((count = zip.read(b, off, len)) < 0) {
+                if (!nextEntry()) return -1;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    } // class ZipEntriesStream
+
+
+    /**
+     * Counts the bytes read, f.e. the compressed bytes consumed by
+     * a decompressing stream.
+     */
+    static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * @return  the number of bytes read so far
+         */
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count += 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    } // class CountingInputStream
+
+
+} // class Decompression
@@ -4,20 +4,32 @@
  */
 package stanio.diffview;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
 import java.awt.CardLayout;
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.LayoutManager;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
@@ -25,17 +37,38 @@ import javax.swing.text.StyledDocument;
 
 import stanio.diffview.swing.LineRuler;
 import stanio.diffview.swing.NowrapTextPane;
-import stanio.diffview.swing.text.BoxBackgroundFactory;
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.SplitDiff;
+import stanio.diffview.udiff.UDiffDocument;
 import stanio.diffview.udiff.UDiffEditorKit;
 
 /**
  * Shows alternatively the unified or split (side-by-side) views/components.
+ * <p>
+ * The unified view may be shown using a lightweight {@code DiffLinesView},
+ * instead of the {@code DiffTextPane}, for huge diffs.  The document is
+ * then detached from the text pane.  Navigation (caret, scrolling, and
+ * highlighting) goes to the unified view component currently in use.</p>
+ * <p>
+ * The split view shows a single file entry at a time: the one at the
+ * unified view position when switching to it, and then the one at the
+ * unified view caret (as moved by the outline navigation).  The aligned
+ * old-side and new-side documents of a file entry are built in a background
+ * thread, as the entry is reached, and the ones of the last {@value
+ * #SPLIT_CACHE_SIZE} entries are kept.</p>
+ *
+ * @see  SplitDiff
  */
 @SuppressWarnings("serial")
 class DiffCardPane extends JPanel {
 
     public static final String CARD_UNIFIED = "unified";
     public static final String CARD_SPLIT = "split";
+    public static final String CARD_LINES = "lines";
+
+    static final int SPLIT_CACHE_SIZE = 8;
+
+    private static final int NO_ENTRY = -2;
 
     DiffTextPane unifiedPane;
 
@@ -43,6 +76,33 @@ class DiffCardPane extends JPanel {
 
     private boolean splitPaneInitialized;
 
+    private JTextPane leftText;
+    private JTextPane rightText;
+
+    private final Map<Integer, SplitDiff> splitCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, SplitDiff> eldest) {
+            return size() > SPLIT_CACHE_SIZE;
+        }
+    };
+
+    private int splitEntry = NO_ENTRY;
+
+    /** Whether the split view shows the {@code splitEntry} completely. */
+    private boolean splitComplete;
+
+    private SwingWorker<SplitDiff, Void> splitLoader;
+
+    JScrollPane linesPane;
+
+    private DiffLinesView linesView;
+
+    private boolean showLines;
+
+    private int highlightStart = -1;
+    private int highlightEnd;
+    private Color highlightColor;
+    private Object highlightTag;
+
     public DiffCardPane() {
         super();
         unifiedPane = new DiffTextPane();
@@ -52,6 +112,17 @@ class DiffCardPane extends JPanel {
                 initSplitPane();
             }
         });
+        unifiedPane.addPropertyChangeListener("document", event -> {
+            if (splitLoader != null) {
+                splitLoader.cancel(false);
+                splitLoader = null;
+            }
+            splitCache.clear();
+            splitEntry = NO_ENTRY;
+            splitComplete = false;
+            removeHighlight();
+            firePropertyChange("document", event.getOldValue(), event.getNewValue());
+        });
         initUI();
     }
 
@@ -63,16 +134,47 @@ class DiffCardPane extends JPanel {
         super.removeAll();
         super.add(unifiedPane, CARD_UNIFIED);
         super.add(splitPane, CARD_SPLIT);
+        if (linesPane != null) {
+            super.add(linesPane, CARD_LINES);
+        }
+    }
+
+    /**
+     * Lazy initialization of the lines view, following the document and
+     * font of the unified text pane.
+     */
+    private void initLinesPane() {
+        if (linesPane != null) return;
+
+        JTextPane sourceText = unifiedPane.diffPane;
+        DiffLinesView linesView = new DiffLinesView();
+        linesView.setFocusable(true);
+        linesView.setFont(sourceText.getFont());
+        linesView.setDocument((StyledDocument) getDocument());
+        unifiedPane.addPropertyChangeListener("document", event ->
+                linesView.setDocument((StyledDocument) getDocument()));
+        sourceText.addPropertyChangeListener("font", event ->
+                linesView.setFont(sourceText.getFont()));
+        this.linesView = linesView;
+
+        linesPane = new JScrollPane(linesView,
+                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+                JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        linesPane.setRowHeaderView(linesView.createRuler());
+        linesPane.getVerticalScrollBar().setUnitIncrement(linesView.getRowHeight());
+        super.add(linesPane, CARD_LINES);
     }
 
     /**
-     * Lazy initialization of the split pane using data from the unified pane.
+     * Lazy initialization of the split pane.
      */
     private void initSplitPane() {
         if (splitPaneInitialized) return;
 
         JScrollPane left = setUpSplit(false);
         JScrollPane right = setUpSplit(true);
+        leftText = (JTextPane) left.getViewport().getView();
+        rightText = (JTextPane) right.getViewport().getView();
 
         left.getViewport().addChangeListener(event -> {
             Point2D scrollPosition = getScrollPosition((JComponent)
@@ -91,7 +193,7 @@ class DiffCardPane extends JPanel {
         JTextPane sourceText = unifiedPane.diffPane;
         JTextPane textPane = new NowrapTextPane();
         textPane.setEditorKit(new UDiffEditorKit());
-        textPane.setDocument(sourceText.getStyledDocument());
+        textPane.setDocument(new UDiffDocument());
         textPane.setEditable(false);
         textPane.setFont(sourceText.getFont());
         textPane.setBackground(sourceText.getBackground());
@@ -101,19 +203,100 @@ class DiffCardPane extends JPanel {
                 textPane.getCaret().setVisible(true);
             }
         });
+        sourceText.addPropertyChangeListener("font", event ->
+                textPane.setFont(sourceText.getFont()));
 
-        JScrollPane left = new JScrollPane(textPane,
+        JScrollPane scrollPane = new JScrollPane(textPane,
                 JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
                 JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         JTextPane ruler = new LineRuler(textPane);
-        ruler.setEditorKit(BoxBackgroundFactory.newEditorKit());
-        ruler.setFont(textPane.getFont());
-        ruler.putClientProperty("JComponent.minimumWidth", 0);
-        ruler.setDocument(added ? unifiedPane.toRuler.getDocument()
-                                : unifiedPane.fromRuler.getDocument());
-        //DiffStyles.addTo(ruler.getStyledDocument());
-        left.setRowHeaderView(ruler);
-        return left;
+        DiffTextPane.initRuler(textPane, ruler, 0, !added);
+        Style defaultStyle = ruler.getStyledDocument().getStyle(StyleContext.DEFAULT_STYLE);
+        final float inset = 2f;
+        StyleConstants.setRightIndent(defaultStyle, inset);
+        scrollPane.setRowHeaderView(ruler);
+        return scrollPane;
+    }
+
+    private int fileEntryAt(int offset) {
+        Document doc = getDocument();
+        if (!(doc instanceof UDiffDocument)) return NO_ENTRY;
+
+        LineIndex lines = ((UDiffDocument) doc).getLineIndex();
+        if (lines.getFileCount() == 0) return -1;
+
+        int line = doc.getDefaultRootElement().getElementIndex(offset);
+        return Math.max(0, lines.getFileIndex(Math.min(line, lines.size() - 1)));
+    }
+
+    /**
+     * Shows the given file entry in the split view, building its old-side
+     * and new-side documents in the background, if not already available.
+     * An entry being built, or already shown completely, is left as is.
+     * An entry shown incompletely (not completely loaded, yet) is rebuilt,
+     * keeping the caret positions.
+     *
+     * @param   entry  file entry index, or {@code -1} to show the whole
+     *          document, if it has no file entries
+     */
+    private void showSplitEntry(int entry) {
+        if (entry == NO_ENTRY
+                || entry == splitEntry && (splitLoader != null || splitComplete)) return;
+
+        boolean sameEntry = (entry == splitEntry);
+        splitEntry = entry;
+        SplitDiff cached = splitCache.get(entry);
+        if (cached != null) {
+            splitComplete = true;
+            setSplitDocuments(cached, false);
+            return;
+        }
+
+        if (splitLoader != null) {
+            splitLoader.cancel(false);
+        }
+        splitComplete = false;
+        UDiffDocument source = (UDiffDocument) getDocument();
+        LineIndex lines = source.getLineIndex();
+        int fileCount = lines.getFileCount();
+        int fromLine = (entry < 0) ? 0 : lines.getFileLine(entry);
+        int toLine = (entry + 1 < fileCount) ? lines.getFileLine(entry + 1)
+                                             : lines.size();
+        // The line index may be ahead of the loaded paragraphs
+        int[] loadedLines = new int[1];
+        source.render(() -> loadedLines[0] = source
+                .getDefaultRootElement().getElementCount());
+        boolean complete = toLine < loadedLines[0] || unifiedPane.isLoaded();
+        splitLoader = new SwingWorker<SplitDiff, Void>() {
+            @Override protected SplitDiff doInBackground() throws Exception {
+                return SplitDiff.build(source, fromLine, toLine);
+            }
+            @Override protected void done() {
+                if (splitLoader != this || isCancelled()) return;
+
+                splitLoader = null;
+                try {
+                    SplitDiff split = get();
+                    if (complete) {
+                        splitCache.put(entry, split);
+                    }
+                    splitComplete = complete;
+                    setSplitDocuments(split, sameEntry);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        splitLoader.execute();
+    }
+
+    private void setSplitDocuments(SplitDiff split, boolean keepCarets) {
+        int leftCaret = keepCarets ? leftText.getCaretPosition() : 0;
+        int rightCaret = keepCarets ? rightText.getCaretPosition() : 0;
+        leftText.setDocument(split.getLeft());
+        rightText.setDocument(split.getRight());
+        leftText.setCaretPosition(Math.min(leftCaret, split.getLeft().getLength()));
+        rightText.setCaretPosition(Math.min(rightCaret, split.getRight().getLength()));
     }
 
     @Override
@@ -153,42 +336,205 @@ class DiffCardPane extends JPanel {
     public void showSplit(boolean split) {
         if (split) {
             initSplitPane();
-            // TODO: Rulers should have separate documents and this should be
-            // set up just in setUpSplit()
-            StyledDocument leftRuler = unifiedPane.fromRuler.getStyledDocument();
-            Style defaultStyle = leftRuler.getStyle(StyleContext.DEFAULT_STYLE);
-            final float inset = 2f;
-            StyleConstants.setRightIndent(defaultStyle, inset);
-
-            StyledDocument rightRuler = unifiedPane.toRuler.getStyledDocument();
-            defaultStyle = rightRuler.getStyle(StyleContext.DEFAULT_STYLE);
-            StyleConstants.setLeftIndent(defaultStyle, inset);
+            showSplitEntry(fileEntryAt(firstVisibleOffset()));
+        }
+        showCard(split ? CARD_SPLIT : showLines ? CARD_LINES : CARD_UNIFIED);
+    }
+
+    /**
+     * @return  the document offset at the top of the unified view
+     */
+    private int firstVisibleOffset() {
+        if (showLines) {
+            return linesView.viewToModel(linesPane.getViewport().getViewPosition());
+        }
+        Point position = unifiedPane.getViewport().getViewPosition();
+        return unifiedPane.diffPane.viewToModel2D(position);
+    }
+
+    /**
+     * Selects the component for the unified view.  The lightweight view
+     * takes over the caret position, and the highlight of the text pane,
+     * and vice versa.
+     *
+     * @param   lines  whether to use the lightweight {@code DiffLinesView}
+     *          in place of the {@code DiffTextPane}
+     */
+    public void showLines(boolean lines) {
+        if (lines != showLines) {
+            int caret = getCaretPosition();
+            removeHighlightTag();
+            showLines = lines;
+            if (lines) {
+                initLinesPane();
+                unifiedPane.setDocumentAttached(false);
+                linesView.setCaretPosition(caret);
+            } else {
+                linesView.setHighlight(-1, -1, null);
+                unifiedPane.setDocumentAttached(true);
+                unifiedPane.diffPane.setCaretPosition(caret);
+            }
+            if (highlightStart >= 0) {
+                highlight(highlightStart, highlightEnd, highlightColor);
+            }
+        }
+        if (!CARD_SPLIT.equals(getVisibleComponent())) {
+            showCard(lines ? CARD_LINES : CARD_UNIFIED);
+        }
+    }
+
+    /**
+     * @return  the diff document of the unified view
+     */
+    Document getDocument() {
+        return unifiedPane.getDocument();
+    }
+
+    int getCaretPosition() {
+        return showLines ? linesView.getCaretPosition()
+                         : unifiedPane.diffPane.getCaretPosition();
+    }
+
+    /**
+     * Moves the caret of the unified view, and shows the file entry at
+     * the given position in the split view, if visible.
+     *
+     * @param   offset  the document offset
+     */
+    void setCaretPosition(int offset) {
+        if (showLines) {
+            linesView.setCaretPosition(offset);
+        } else {
+            unifiedPane.diffPane.setCaretPosition(offset);
+        }
+        if (splitPane.isVisible()) {
+            showSplitEntry(fileEntryAt(offset));
+        }
+    }
+
+    /**
+     * Selects the given text range in the unified text pane, or moves the
+     * caret of the lightweight view (which has no selection) to its start.
+     */
+    void select(int start, int end) {
+        if (showLines) {
+            setCaretPosition(start);
+        } else {
+            unifiedPane.diffPane.select(start, end);
+            if (splitPane.isVisible()) {
+                showSplitEntry(fileEntryAt(start));
+            }
+        }
+    }
+
+    /**
+     * Scrolls the given text range of the unified view into view, as much
+     * of it as fits, starting from its start.
+     *
+     * @param   start  the start offset
+     * @param   end  the end offset (inclusive)
+     */
+    void scrollRangeToVisible(int start, int end) {
+        JComponent view;
+        Rectangle2D rect;
+        if (showLines) {
+            view = linesView;
+            rect = linesView.modelToView(start);
+            if (rect != null) {
+                rect.add(linesView.modelToView(end));
+            }
         } else {
-            StyledDocument leftRuler = unifiedPane.fromRuler.getStyledDocument();
-            Style defaultStyle = leftRuler.getStyle(StyleContext.DEFAULT_STYLE);
-            StyleConstants.setRightIndent(defaultStyle, 0);
+            JTextPane textPane = unifiedPane.diffPane;
+            view = textPane;
+            try {
+                rect = textPane.modelToView2D(start);
+                if (rect != null) {
+                    rect.add(textPane.modelToView2D(end));
+                }
+            } catch (BadLocationException e) {
+                // c'est la vie
+                e.printStackTrace();
+                return;
+            }
+        }
+        if (rect == null) return;
+
+        rect.setRect(rect.getX(), rect.getY(),
+                Math.min(rect.getWidth(), view.getParent().getWidth()),
+                Math.min(rect.getHeight(), view.getParent().getHeight()));
+        view.scrollRectToVisible(rect instanceof Rectangle
+                                 ? (Rectangle) rect
+                                 : rect.getBounds());
+    }
 
-            StyledDocument rightRuler = unifiedPane.toRuler.getStyledDocument();
-            defaultStyle = rightRuler.getStyle(StyleContext.DEFAULT_STYLE);
-            StyleConstants.setLeftIndent(defaultStyle,
-                    getFontMetrics(splitPane.leftComponent.getFont()).charWidth('0'));
+    /**
+     * Highlights the given text range in the unified view, replacing any
+     * previous highlight.
+     */
+    void highlight(int start, int end, Color color) {
+        highlightStart = start;
+        highlightEnd = end;
+        highlightColor = color;
+        if (showLines) {
+            linesView.setHighlight(start, end, color);
+            return;
+        }
+        Highlighter highlighter = unifiedPane.diffPane.getHighlighter();
+        try {
+            if (highlightTag == null) {
+                highlightTag = highlighter.addHighlight(start, end,
+                        new DefaultHighlighter.DefaultHighlightPainter(color));
+            } else {
+                highlighter.changeHighlight(highlightTag, start, end);
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void removeHighlight() {
+        highlightStart = -1;
+        removeHighlightTag();
+        if (linesView != null) {
+            linesView.setHighlight(-1, -1, null);
         }
+    }
+
+    private void removeHighlightTag() {
+        if (highlightTag != null) {
+            unifiedPane.diffPane.getHighlighter().removeHighlight(highlightTag);
+            highlightTag = null;
+        }
+    }
 
+    private void showCard(String name) {
         LayoutManager layout = getLayout();
         if (layout instanceof CardLayout) {
-            ((CardLayout) layout).show(this, split ? CARD_SPLIT : CARD_UNIFIED);
+            ((CardLayout) layout).show(this, name);
         }
     }
 
     public String getVisibleComponent() {
-        return splitPane.isVisible() ? CARD_SPLIT : CARD_UNIFIED;
+        if (splitPane.isVisible()) {
+            return CARD_SPLIT;
+        }
+        return (linesPane != null && linesPane.isVisible()) ? CARD_LINES
+                                                            : CARD_UNIFIED;
     }
 
     @Override
     public boolean requestFocusInWindow() {
-        Component comp = CARD_SPLIT.equals(getVisibleComponent())
-                         ? splitPane.leftComponent.getViewport().getView()
-                         : unifiedPane.diffPane;
+        Component comp;
+        switch (getVisibleComponent()) {
+        case CARD_SPLIT:
+            comp = splitPane.leftComponent.getViewport().getView();
+            break;
+        case CARD_LINES:
+            comp = linesPane.getViewport().getView();
+            break;
+        default:
+            comp = unifiedPane.diffPane;
+        }
         return comp.requestFocusInWindow();
     }
 
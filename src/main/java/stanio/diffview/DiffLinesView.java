@@ -0,0 +1,573 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+
+import stanio.diffview.udiff.DiffStyles;
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.ParseResult.Type;
+import stanio.diffview.udiff.UDiffDocument;
+import stanio.diffview.udiff.UDiffDocument.StyleName;
+
+/**
+ * Lightweight, read-only view of a diff document.
+ * <p>
+ * Unlike a {@code JTextPane} this doesn't build a view hierarchy for the
+ * whole document.  Every paragraph of the document is rendered as a single,
+ * fixed-height line using the component (monospace) font, and only the rows
+ * intersecting the clip bounds are painted.  Colors and font style are
+ * resolved from the paragraph and text run attributes as the lines get
+ * painted.  The preferred width is tracked incrementally, from the length
+ * of inserted lines (counting tabs as full tab stops).  The lines of a newly
+ * set document are measured in steps of {@value #MEASURE_STEP}, one step
+ * per event, so the event dispatch thread is not held up by huge
+ * documents.</p>
+ * <p>
+ * There's no visible caret nor selection.  A caret position is kept for
+ * navigation, and a single range of text could be highlighted.</p>
+ *
+ * @see  #createRuler()
+ */
+@SuppressWarnings("serial")
+class DiffLinesView extends JComponent implements Scrollable {
+
+    static final int TAB_SIZE = 8;
+
+    static final int MEASURE_STEP = 10_000;
+
+    private StyledDocument document;
+
+    private final DocumentListener documentListener;
+
+    private int rowCount;
+
+    private int maxColumns;
+
+    private int caretPosition;
+
+    private int highlightStart = -1;
+
+    private int highlightEnd = -1;
+
+    private Color highlightColor;
+
+    private final Segment text = new Segment();
+
+    DiffLinesView() {
+        this.documentListener = new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent event) {
+                linesChanged(event);
+            }
+            @Override public void removeUpdate(DocumentEvent event) {
+                linesChanged(event);
+            }
+            @Override public void changedUpdate(DocumentEvent event) {
+                SwingUtilities.invokeLater(() -> repaint());
+            }
+        };
+        text.setPartialReturn(true);
+        setOpaque(true);
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        updateUI();
+    }
+
+    @Override
+    public void updateUI() {
+        super.updateUI();
+        setBackground(UIManager.getColor("TextPane.background"));
+        setForeground(UIManager.getColor("TextPane.foreground"));
+    }
+
+    StyledDocument getDocument() {
+        return document;
+    }
+
+    void setDocument(StyledDocument document) {
+        StyledDocument oldDocument = this.document;
+        if (oldDocument != null) {
+            oldDocument.removeDocumentListener(documentListener);
+        }
+        this.document = document;
+        rowCount = 0;
+        maxColumns = 0;
+        caretPosition = 0;
+        highlightStart = highlightEnd = -1;
+        if (document != null) {
+            document.render(() -> {
+                document.addDocumentListener(documentListener);
+                int count = document.getDefaultRootElement().getElementCount();
+                updateSize(count, 0);
+                measureLater(document, 0, count);
+            });
+        }
+        firePropertyChange("document", oldDocument, document);
+    }
+
+    /**
+     * Measures the given range of lines a step at a time, in subsequent
+     * events, while the given document is still set.
+     */
+    private void measureLater(StyledDocument doc, int from, int to) {
+        SwingUtilities.invokeLater(() -> {
+            if (document != doc) return;
+
+            int end = Math.min(to, from + MEASURE_STEP);
+            int[] columns = { 0 };
+            doc.render(() -> columns[0] = measure(doc,
+                    doc.getDefaultRootElement(), from, end));
+            updateSize(rowCount, columns[0]);
+            if (end < to) {
+                measureLater(doc, end, to);
+            }
+        });
+    }
+
+    /**
+     * Invoked in the thread modifying the document, while holding the
+     * document lock.
+     */
+    void linesChanged(DocumentEvent event) {
+        Document doc = event.getDocument();
+        Element root = doc.getDefaultRootElement();
+        int count = root.getElementCount();
+        int start = root.getElementIndex(event.getOffset());
+        int end = root.getElementIndex(event.getOffset() + event.getLength()) + 1;
+        int columns = measure(doc, root, start, Math.min(end, count));
+        if (SwingUtilities.isEventDispatchThread()) {
+            updateSize(count, columns);
+        } else {
+            SwingUtilities.invokeLater(() -> updateSize(count, columns));
+        }
+    }
+
+    private static int measure(Document doc, Element root, int start, int end) {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int max = 0;
+        for (int i = start; i < end; i++) {
+            Element line = root.getElement(i);
+            max = Math.max(max, columns(doc, line.getStartOffset(),
+                                        line.getEndOffset(), segment));
+        }
+        return max;
+    }
+
+    /**
+     * @param   start  line start offset
+     * @param   end  end offset within the same line
+     * @return  the number of columns of the given text, counting tabs as
+     *          full tab stops
+     */
+    private static int columns(Document doc, int start, int end, Segment segment) {
+        int columns = 0;
+        int pos = start;
+        try {
+            while (pos < end) {
+                doc.getText(pos, end - pos, segment);
+                for (int k = segment.offset, n = k + segment.count; k < n; k++) {
+                    columns = (segment.array[k] == '\t')
+                              ? (columns / TAB_SIZE + 1) * TAB_SIZE
+                              : columns + 1;
+                }
+                pos += segment.count;
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        return columns;
+    }
+
+    private void updateSize(int rows, int columns) {
+        if (rows != rowCount || columns > maxColumns) {
+            rowCount = rows;
+            maxColumns = Math.max(maxColumns, columns);
+            revalidate();
+        }
+        repaint();
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getRowHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+
+    int getRowAt(int y) {
+        return Math.max(0, (y - getInsets().top) / getRowHeight());
+    }
+
+    int getCaretPosition() {
+        return caretPosition;
+    }
+
+    /**
+     * Sets the caret position, and scrolls its line into view.
+     *
+     * @param   offset  the document offset
+     */
+    void setCaretPosition(int offset) {
+        caretPosition = offset;
+        Rectangle rect = modelToView(offset);
+        if (rect != null) {
+            scrollRectToVisible(rect);
+        }
+    }
+
+    /**
+     * Highlights the given range of text, replacing any previous
+     * highlight.
+     *
+     * @param   start  the start offset, or {@code -1} to remove the highlight
+     * @param   end  the end offset
+     * @param   color  the highlight color
+     */
+    void setHighlight(int start, int end, Color color) {
+        highlightStart = start;
+        highlightEnd = end;
+        highlightColor = color;
+        repaint();
+    }
+
+    /**
+     * @param   offset  the document offset
+     * @return  the bounds of the given position, one pixel wide, or {@code
+     *          null} if there's no document
+     */
+    Rectangle modelToView(int offset) {
+        StyledDocument doc = document;
+        if (doc == null) return null;
+
+        Rectangle rect = new Rectangle();
+        doc.render(() -> {
+            Element root = doc.getDefaultRootElement();
+            int row = root.getElementIndex(offset);
+            int lineStart = root.getElement(row).getStartOffset();
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            Insets insets = getInsets();
+            rect.setBounds(insets.left + columns(doc, lineStart, offset, segment)
+                                         * getFontMetrics(getFont()).charWidth('0'),
+                           insets.top + row * getRowHeight(), 1, getRowHeight());
+        });
+        return rect;
+    }
+
+    /**
+     * @param   point  a point in this component
+     * @return  the start offset of the line at the given point
+     */
+    int viewToModel(Point point) {
+        StyledDocument doc = document;
+        if (doc == null) return 0;
+
+        int row = getRowAt(point.y);
+        int[] offset = { 0 };
+        doc.render(() -> {
+            Element root = doc.getDefaultRootElement();
+            offset[0] = root.getElement(Math.min(row, root.getElementCount() - 1))
+                            .getStartOffset();
+        });
+        return offset[0];
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        FontMetrics fm = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        return new Dimension(insets.left + insets.right
+                                 + (maxColumns + 1) * fm.charWidth('0'),
+                             insets.top + insets.bottom
+                                 + rowCount * fm.getHeight());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        StyledDocument doc = document;
+        if (doc == null) return;
+
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                            RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        Rectangle bounds = clip;
+        doc.render(() -> paintRows(g2, doc, bounds));
+    }
+
+    private void paintRows(Graphics2D g, StyledDocument doc, Rectangle clip) {
+        Element root = doc.getDefaultRootElement();
+        Insets insets = getInsets();
+        int rowHeight = getRowHeight();
+        int first = getRowAt(clip.y);
+        int last = Math.min(root.getElementCount(), getRowAt(clip.y + clip.height) + 1);
+        for (int row = first; row < last; row++) {
+            int y = insets.top + row * rowHeight;
+            paintLine(g, doc, root.getElement(row), insets.left, y, clip);
+        }
+    }
+
+    private void paintLine(Graphics2D g, StyledDocument doc, Element line,
+                           int x, int y, Rectangle clip) {
+        FontMetrics fm = getFontMetrics(getFont());
+        Color bg = background(line.getAttributes());
+        if (bg != null) {
+            g.setColor(bg);
+            g.fillRect(clip.x, y, clip.width, fm.getHeight());
+        }
+
+        int lineStart = line.getStartOffset();
+        int lineEnd = line.getEndOffset();
+        if (highlightStart < lineEnd && highlightEnd > lineStart) {
+            int charWidth = fm.charWidth('0');
+            int from = x + charWidth * columns(doc, lineStart,
+                    Math.max(lineStart, highlightStart), text);
+            int to = x + charWidth * columns(doc, lineStart,
+                    Math.min(lineEnd, highlightEnd), text);
+            g.setColor(highlightColor);
+            g.fillRect(from, y, Math.max(1, to - from), fm.getHeight());
+        }
+
+        int baseline = y + fm.getAscent();
+        int tabWidth = TAB_SIZE * fm.charWidth('0');
+        TabExpander tabs = (tabX, tabOffset) ->
+                x + (((int) tabX - x) / tabWidth + 1) * tabWidth;
+        float runX = x;
+        for (int i = 0, count = line.getElementCount(); i < count; i++) {
+            Element run = line.getElement(i);
+            AttributeSet attrs = run.getAttributes();
+            int start = run.getStartOffset();
+            int end = Math.min(run.getEndOffset(), line.getEndOffset() - 1);
+            g.setFont(font(attrs));
+            try {
+                while (start < end && runX < clip.x + clip.width) {
+                    doc.getText(start, end - start, text);
+                    float endX = Utilities.getTabbedTextWidth(text,
+                            g.getFontMetrics(), runX, tabs, start) + runX;
+                    if (attrs.isDefined(StyleConstants.Background)) {
+                        g.setColor(StyleConstants.getBackground(attrs));
+                        g.fillRect((int) runX, y, (int) Math.ceil(endX - runX), fm.getHeight());
+                    }
+                    g.setColor(foreground(attrs));
+                    Utilities.drawTabbedText(text, runX, baseline, g, tabs, start);
+                    runX = endX;
+                    start += text.count;
+                }
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The background is not inherited from parent elements, but resolved
+     * from the associated logical style.
+     *
+     * @see  stanio.diffview.swing.text.BoxBackgroundFactory
+     */
+    private static Color background(AttributeSet attrs) {
+        if (attrs.isDefined(StyleConstants.Background)) {
+            return StyleConstants.getBackground(attrs);
+        }
+        AttributeSet style = attrs.getResolveParent();
+        return (style != null && style.getAttribute(StyleConstants.Background) != null)
+                ? StyleConstants.getBackground(style)
+                : null;
+    }
+
+    private Color foreground(AttributeSet attrs) {
+        Object fg = attrs.getAttribute(StyleConstants.Foreground);
+        return (fg instanceof Color) ? (Color) fg : getForeground();
+    }
+
+    private Font font(AttributeSet attrs) {
+        Font f = getFont();
+        int style = (StyleConstants.isBold(attrs) ? Font.BOLD : 0)
+                | (StyleConstants.isItalic(attrs) ? Font.ITALIC : 0);
+        return (style == f.getStyle()) ? f : f.deriveFont(style);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect,
+                                          int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+                ? getRowHeight()
+                : getFontMetrics(getFont()).charWidth('0');
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect,
+                                           int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+                ? Math.max(getRowHeight(), visibleRect.height - getRowHeight())
+                : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        Container parent = SwingUtilities.getUnwrappedParent(this);
+        return (parent instanceof JViewport)
+                && parent.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        Container parent = SwingUtilities.getUnwrappedParent(this);
+        return (parent instanceof JViewport)
+                && parent.getHeight() > getPreferredSize().height;
+    }
+
+    /**
+     * Creates a line number ruler for this view, to be set up as a row
+     * header of the enclosing scroll pane.  It paints just the visible rows,
+     * as this view does.
+     *
+     * @return  a new line number ruler
+     */
+    JComponent createRuler() {
+        return new Ruler();
+    }
+
+
+    private class Ruler extends JComponent {
+
+        private static final int GAP = 2;
+
+        Ruler() {
+            setOpaque(true);
+            DiffLinesView.this.addPropertyChangeListener(event -> {
+                String name = event.getPropertyName();
+                if ("font".equals(name) || "preferredSize".equals(name)) {
+                    revalidate();
+                }
+                repaint();
+            });
+        }
+
+        private int columnWidth() {
+            FontMetrics fm = getFontMetrics(DiffLinesView.this.getFont());
+            int digits = Math.max(3, Integer.toString(rowCount).length());
+            return (digits + 1) * fm.charWidth('0');
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(columnWidth() * 2 + GAP,
+                                 DiffLinesView.this.getPreferredSize().height);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(DiffLinesView.this.getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            StyledDocument doc = document;
+            if (doc == null) return;
+
+            Rectangle bounds = clip;
+            doc.render(() -> paintNumbers((Graphics2D) g, doc, bounds));
+        }
+
+        private void paintNumbers(Graphics2D g, StyledDocument doc, Rectangle clip) {
+            Element root = doc.getDefaultRootElement();
+            Font f = DiffLinesView.this.getFont();
+            FontMetrics fm = getFontMetrics(f);
+            g.setFont(f);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                               RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            int top = DiffLinesView.this.getInsets().top;
+            int rowHeight = fm.getHeight();
+            int columnWidth = columnWidth();
+            int first = Math.max(0, (clip.y - top) / rowHeight);
+            int last = Math.min(root.getElementCount(),
+                                (clip.y + clip.height - top) / rowHeight + 1);
+            if (!(doc instanceof UDiffDocument)) return;
+
+            LineIndex lines = ((UDiffDocument) doc).getLineIndex();
+            for (int row = first; row < last; row++) {
+                Type lineType = lines.getType(row);
+                Style style = null;
+                if (lineType == Type.REMOVED) {
+                    style = doc.getStyle(StyleName.DELETED_NUMBER);
+                } else if (lineType == Type.ADDED) {
+                    style = doc.getStyle(StyleName.INSERTED_NUMBER);
+                }
+                int y = top + row * rowHeight;
+                paintNumber(g, lines.getFromLine(row), style, 0, y, columnWidth);
+                paintNumber(g, lines.getToLine(row), style, columnWidth + GAP, y, columnWidth);
+            }
+        }
+
+        private void paintNumber(Graphics2D g, int number, Style style,
+                                 int x, int y, int width) {
+            FontMetrics fm = g.getFontMetrics();
+            Color fg = DiffStyles.colorWithAlpha(DiffLinesView.this.getForeground(), 0.5f);
+            if (style != null) {
+                Color bg = background(style);
+                if (bg != null) {
+                    g.setColor(bg);
+                    g.fillRect(x, y, width, fm.getHeight());
+                }
+                fg = foreground(style);
+            }
+            if (number <= 0) return;
+
+            String str = Integer.toString(number);
+            g.setColor(fg);
+            g.drawString(str, x + width - fm.stringWidth(str) - GAP, y + fm.getAscent());
+        }
+
+    } // class Ruler
+
+
+} // class DiffLinesView
@@ -4,15 +4,16 @@
  */
 package stanio.diffview;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import java.awt.BorderLayout;
-import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
@@ -20,7 +21,6 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Rectangle2D;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -30,13 +30,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.KeyStroke;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.AbstractDocument;
-import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
-import javax.swing.text.JTextComponent;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
@@ -44,7 +42,8 @@ import stanio.diffview.swing.tree.FilteredTreeModel;
 import stanio.diffview.swing.tree.PathFoldingTreeModel;
 import stanio.diffview.swing.tree.PathFoldingTreeModel.Node;
 import stanio.diffview.swing.tree.Trees;
-import stanio.diffview.udiff.UDiffDocument.Attribute;
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.UDiffDocument;
 
 @SuppressWarnings("serial")
 class DiffOutlinePane extends JPanel {
@@ -54,15 +53,33 @@ class DiffOutlinePane extends JPanel {
 
     JTree tree;
 
+    /**
+     * Prefix of filter text matching the added and removed lines of file
+     * entries, instead of their paths.  Following {@code '/'}, the filter
+     * text is a regular expression.
+     */
+    static final String CONTENT_PREFIX = ":";
+
+    /** Delay in milliseconds, after typing, to update the filter. */
+    static final int FILTER_DELAY = 100;
+
     private JTextField filterField;
-    JTextComponent diffText;
+    DiffCardPane diffView;
+
+    private ContentFilter contentFilter;
+
+    private FuzzyFilter fuzzyFilter;
+
+    private final Timer filterTimer;
 
-    public DiffOutlinePane(JTextComponent diffText) {
+    public DiffOutlinePane(DiffCardPane diffView) {
         this.fileTree = new FileTreeModel();
         this.filteredTree = new FilteredTreeModel(fileTree);
         this.tree = new JTree(new PathFoldingTreeModel(filteredTree));
         this.filterField = new JTextField();
-        this.diffText = diffText;
+        this.diffView = diffView;
+        this.filterTimer = new Timer(FILTER_DELAY, event -> updateFilter());
+        filterTimer.setRepeats(false);
         initUI();
     }
 
@@ -84,7 +101,9 @@ class DiffOutlinePane extends JPanel {
         ActionMap actionMap = filterField.getActionMap();
         actionMap.put("goto-tree", new AbstractAction() {
             @Override public void actionPerformed(ActionEvent event) {
-                tree.setSelectionRow(0);
+                int row = bestMatchRow();
+                tree.setSelectionRow(row);
+                tree.scrollRowToVisible(row);
                 tree.requestFocusInWindow();
             }
         });
@@ -169,18 +188,18 @@ class DiffOutlinePane extends JPanel {
         // https://www.formdev.com/flatlaf/customizing/
         // https://www.formdev.com/flatlaf/components/textfield/
         // https://www.formdev.com/flatlaf/client-properties/#JTextField
-        filterField.putClientProperty("JTextField.placeholderText", "Filter (Ctrl+T)");
+        filterField.putClientProperty("JTextField.placeholderText", "Filter (Ctrl+T), :content, :/regex");
         filterField.putClientProperty("JTextField.showClearButton", true);
 
         filterField.getDocument().addDocumentListener(new DocumentListener() {
-            @Override public void removeUpdate(DocumentEvent e) { updateFilter(); }
-            @Override public void insertUpdate(DocumentEvent e) { updateFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { scheduleFilter(); }
+            @Override public void insertUpdate(DocumentEvent e) { scheduleFilter(); }
             @Override public void changedUpdate(DocumentEvent e) {/* */}
         });
 
         DiffFilesListener diffFilesListener = new DiffFilesListener();
-        diffText.getDocument().addDocumentListener(diffFilesListener);
-        diffText.addPropertyChangeListener("document", event -> {
+        diffView.getDocument().addDocumentListener(diffFilesListener);
+        diffView.addPropertyChangeListener("document", event -> {
             Object oldValue = event.getOldValue();
             if (oldValue instanceof Document) {
                 ((Document) oldValue).removeDocumentListener(diffFilesListener);
@@ -200,52 +219,30 @@ class DiffOutlinePane extends JPanel {
     }
 
     void scrollIntoView(TreePath path, boolean focus) {
-        String filePath = Stream.of(path.getPath())
-                                .map(Object::toString)
-                                .collect(Collectors.joining("/"))
-                                .replaceFirst("^<root>/", "");
-        AbstractDocument doc = (AbstractDocument) diffText.getDocument();
-        Element p = doc.getParagraphElement(0);
-        Rectangle2D rect = null;
-        Element section = null;
-        while (p != null) {
-            String fileAttr = (String) p.getAttributes().getAttribute(Attribute.FILE);
-            //System.out.println(p.getStartOffset() + ", " + p.getEndOffset() + ": " + fileAttr);
-            try {
-                if (filePath.equals(fileAttr)) {
-                    section = p;
-                    rect = diffText.modelToView2D(p.getStartOffset());
-                } else if (fileAttr != null && rect != null) {
-                    rect.add(diffText.modelToView2D(p.getStartOffset() - 1));
-                    break;
-                }
-            } catch (BadLocationException e) {
-                // c'est la vie
-                e.printStackTrace();
-            }
-            Element next = doc.getParagraphElement(p.getEndOffset());
-            p = (next == p) ? null : next;
-        }
-        if (rect == null) {
+        String filePath = filePath(path);
+        Document doc = diffView.getDocument();
+        if (!(doc instanceof UDiffDocument)) return;
+
+        LineIndex lines = ((UDiffDocument) doc).getLineIndex();
+        int entry = lines.indexOfFile(filePath);
+        if (entry < 0) {
             return;
         }
-        if (p == null) {
-            try {
-                rect.add(diffText.modelToView2D(doc.getLength() - 1));
-            } catch (BadLocationException e) {
-                // c'est la vie
-                e.printStackTrace();
-            }
+        int fileCount = lines.getFileCount();
+
+        Element root = doc.getDefaultRootElement();
+        Element section = root.getElement(lines.getFileLine(entry));
+        if (section == null) {
+            return; // Not yet in the document
         }
-        rect.setRect(rect.getX(), rect.getY(),
-                Math.min(rect.getWidth(), diffText.getParent().getWidth()),
-                Math.min(rect.getHeight(), diffText.getParent().getHeight()));
-        diffText.scrollRectToVisible(rect instanceof Rectangle
-                                     ? (Rectangle) rect
-                                     : rect.getBounds());
-        diffText.setCaretPosition(section.getStartOffset());
+        Element next = (entry + 1 < fileCount)
+                       ? root.getElement(lines.getFileLine(entry + 1))
+                       : null;
+        int end = (next == null) ? doc.getLength() : next.getStartOffset();
+        diffView.scrollRangeToVisible(section.getStartOffset(), Math.max(0, end - 1));
+        diffView.setCaretPosition(section.getStartOffset());
         if (focus) {
-            diffText.requestFocusInWindow();
+            diffView.requestFocusInWindow();
         }
     }
 
@@ -255,29 +252,111 @@ class DiffOutlinePane extends JPanel {
         initUI();
     }
 
+    static String filePath(TreePath path) {
+        return ((FileTreeModel.Node) path.getLastPathComponent()).path(path);
+    }
+
+    /**
+     * Cancels the filtering in progress, and schedules a filter update
+     * after {@value #FILTER_DELAY} ms of no further changes.
+     */
+    private void scheduleFilter() {
+        filteredTree.cancelFiltering();
+        cancelContentFilter();
+        filterTimer.restart();
+    }
+
     void updateFilter() {
-        filteredTree.filter(filterFor(
-                filterField.getText().toLowerCase(Locale.ROOT)));
+        filterTimer.stop();
+        cancelContentFilter();
+        filterField.putClientProperty("JComponent.outline", null);
+
+        String text = filterField.getText();
+        if (!text.startsWith(CONTENT_PREFIX)) {
+            String query = text.toLowerCase(Locale.ROOT);
+            fuzzyFilter = query.isEmpty() ? null
+                                          : new FuzzyFilter(query, fuzzyFilter);
+            filteredTree.filterLater(fuzzyFilter);
+            return;
+        }
+        fuzzyFilter = null;
+
+        Pattern pattern = contentPattern(text.substring(CONTENT_PREFIX.length()));
+        Document doc = diffView.getDocument();
+        if (pattern == null || !(doc instanceof UDiffDocument)) {
+            filteredTree.clearFilter();
+            return;
+        }
+
+        Set<String> matched = new HashSet<>();
+        Predicate<TreePath> filter = path -> matched.contains(filePath(path));
+        filteredTree.filter(filter);
+        contentFilter = new ContentFilter((UDiffDocument) doc, pattern, paths -> {
+            matched.addAll(paths);
+            filteredTree.filter(filter);
+        });
+        contentFilter.execute();
     }
 
-    private static Predicate<TreePath> filterFor(String token) {
-        return path -> {
-            TreePath current = path;
-            while (current != null) {
-                if (current.getLastPathComponent().toString()
-                        .toLowerCase(Locale.ROOT).contains(token)) {
-                    return true;
-                }
-                current = current.getParentPath();
+    private void cancelContentFilter() {
+        if (contentFilter != null) {
+            // Not interrupting: an interrupt closes FileChannels being read
+            contentFilter.cancel(false);
+            contentFilter = null;
+        }
+    }
+
+    /**
+     * @param   query  {@code "/regex"}, or literal text
+     * @return  the pattern for the given content query, or {@code null}
+     *          if empty or not valid
+     */
+    private Pattern contentPattern(String query) {
+        boolean regex = query.startsWith("/");
+        String source = regex ? query.substring(1) : query;
+        if (source.isEmpty()) return null;
+
+        int flags = regex ? 0 : Pattern.LITERAL;
+        if (source.equals(source.toLowerCase(Locale.ROOT))) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        try {
+            return Pattern.compile(source, flags);
+        } catch (PatternSyntaxException e) {
+            filterField.putClientProperty("JComponent.outline", "error");
+            return null;
+        }
+    }
+
+    /**
+     * @return  the row of the best fuzzy filter match, or {@code 0} if
+     *          there is no fuzzy filter
+     */
+    private int bestMatchRow() {
+        FuzzyFilter filter = fuzzyFilter;
+        if (filter == null) return 0;
+
+        int bestRow = 0;
+        int bestScore = FuzzyFilter.NO_MATCH;
+        for (int row = 0, count = tree.getRowCount(); row < count; row++) {
+            Node node = (Node) tree.getPathForRow(row).getLastPathComponent();
+            FilteredTreeModel.Node filtered = (FilteredTreeModel.Node)
+                    node.getFoldedPath().getLastPathComponent();
+            int score = filter.scoreOf(filtered.getSourceNode());
+            if (score > bestScore) {
+                bestRow = row;
+                bestScore = score;
             }
-            return false;
-        };
+        }
+        return bestRow;
     }
 
 
     class DiffFilesListener implements DocumentListener {
 
-        private Map<Element, String> paths = new HashMap<>();
+        private Document document;
+
+        private List<String> paths = new ArrayList<>();
 
         @Override
         public void insertUpdate(DocumentEvent event) {
@@ -296,26 +375,31 @@ class DiffOutlinePane extends JPanel {
 
         private void updateFileTree(DocumentEvent event) {
             Document source = event.getDocument();
-            if (source instanceof AbstractDocument) {
-                AbstractDocument document = (AbstractDocument) source;
-                Element root = document.getDefaultRootElement();
-                for (int index = root.getElementIndex(event.getOffset()),
-                        count = root.getElementCount(); index < count; index++) {
-                    updateFileTree(root.getElement(index));
+            if (source != document) {
+                document = source;
+                paths.clear();
+            }
+            if (source instanceof UDiffDocument) {
+                LineIndex lines = ((UDiffDocument) source).getLineIndex();
+                // The last entry path may get updated with the to-file
+                for (int entry = Math.max(0, paths.size() - 1),
+                        count = lines.getFileCount(); entry < count; entry++) {
+                    updateFileTree(entry, lines.getFile(entry));
                 }
             }
         }
 
-        private void updateFileTree(Element paragraph) {
-            Object path = paragraph.getAttributes().getAttribute(Attribute.FILE);
-            if (path instanceof String) {
-                String oldPath = paths.get(paragraph);
-                if (path.equals(oldPath)) return;
-
-                if (oldPath != null) fileTree.removePath(oldPath);
-                fileTree.addPath(path.toString());
-                paths.put(paragraph, path.toString());
+        private void updateFileTree(int entry, String path) {
+            String oldPath = (entry < paths.size()) ? paths.get(entry) : null;
+            if (entry == paths.size()) {
+                paths.add(path);
+            } else {
+                paths.set(entry, path);
             }
+            if (path == null || path.equals(oldPath)) return;
+
+            if (oldPath != null) fileTree.removePath(oldPath);
+            fileTree.addPath(path);
         }
 
     } // class DiffFilesListener
@@ -25,6 +25,7 @@ import javax.swing.JEditorPane;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
@@ -35,12 +36,11 @@ import javax.swing.event.DocumentListener;
 import javax.swing.plaf.ColorUIResource;
 import javax.swing.text.AbstractDocument;
 import javax.swing.text.AbstractDocument.Content;
-import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.EditorKit;
 import javax.swing.text.Element;
-import javax.swing.text.GapContent;
+import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
@@ -50,18 +50,48 @@ import stanio.diffview.DiffView.Input;
 import stanio.diffview.swing.LineRuler;
 import stanio.diffview.swing.NowrapTextPane;
 import stanio.diffview.swing.text.BoxBackgroundFactory;
+import stanio.diffview.swing.text.PagedContent;
+import stanio.diffview.swing.text.TrigramIndex;
 import stanio.diffview.udiff.DiffStyles;
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.LineIndexCache;
+import stanio.diffview.udiff.ParseResult.Type;
 import stanio.diffview.udiff.UDiffDocument;
-import stanio.diffview.udiff.UDiffDocument.Attribute;
 import stanio.diffview.udiff.UDiffDocument.StyleName;
 import stanio.diffview.udiff.UDiffEditorKit;
 
 @SuppressWarnings("serial")
 class DiffTextPane extends JScrollPane {
 
+    /**
+     * System property for the memory budget (in MiB) of the document text
+     * pages.  Pages over the budget are spilled to a temporary file.
+     *
+     * @see  PagedContent
+     */
+    static final String TEXT_MEMORY_PROPERTY = "stanio.diffview.textMemory";
+
+    /**
+     * System property to enable ({@code true}) or disable ({@code false})
+     * building a search index while loading.  By default, the index is
+     * built for inputs of unknown length, or of at least {@value
+     * #SEARCH_INDEX_THRESHOLD} bytes.
+     *
+     * @see  TrigramIndex
+     */
+    static final String SEARCH_INDEX_PROPERTY = "stanio.diffview.searchIndex";
+
+    static final int SEARCH_INDEX_THRESHOLD = 32 * 1024 * 1024;
+
     JTextPane diffPane;
     JTextPane fromRuler;
     JTextPane toRuler;
+    JProgressBar loadProgress;
+
+    /** The loaded document, whether or not shown by the {@code diffPane}. */
+    private Document document;
+
+    private boolean documentAttached = true;
 
     public DiffTextPane() {
         super(VERTICAL_SCROLLBAR_ALWAYS,
@@ -69,9 +99,13 @@ class DiffTextPane extends JScrollPane {
         this.diffPane = new NowrapTextPane();
         this.fromRuler = new LineRuler(diffPane);
         this.toRuler = new LineRuler(diffPane);
+        this.loadProgress = new JProgressBar();
+        loadProgress.setVisible(false);
         setUpTextPane();
+        this.document = diffPane.getDocument();
         initRuler();
         super.setViewportView(diffPane);
+        WordDiffHighlighter.install(diffPane, super.getViewport());
         JLabel header = initStickyHeader();
         diffPane.addPropertyChangeListener("font", event -> {
             Font f = diffPane.getFont();
@@ -101,8 +135,8 @@ class DiffTextPane extends JScrollPane {
     }
 
     private void initRuler() {
-        initRuler(fromRuler, 0, Attribute.FROM_LINE);
-        initRuler(toRuler, 1, Attribute.TO_LINE);
+        initRuler(diffPane, fromRuler, 0, true);
+        initRuler(diffPane, toRuler, 1, false);
 
         JPanel ruler = new JPanel(new BorderLayout());
         ruler.add(fromRuler, BorderLayout.LINE_START);
@@ -110,7 +144,12 @@ class DiffTextPane extends JScrollPane {
         super.setRowHeaderView(ruler);
     }
 
-    private void initRuler(JTextPane lineRuler, float leftGap, Attribute lineAttr) {
+    /**
+     * Sets up the given ruler to show the from-line, or to-line numbers
+     * of the given diff text pane, following its document changes.
+     */
+    static void initRuler(JTextPane diffPane, JTextPane lineRuler,
+                          float leftGap, boolean fromLines) {
         lineRuler.setEditorKit(BoxBackgroundFactory.newEditorKit());
         Font f = diffPane.getFont();
         lineRuler.setFont(f);
@@ -123,10 +162,10 @@ class DiffTextPane extends JScrollPane {
         StyleConstants.setAlignment(defaultStyle, StyleConstants.ALIGN_RIGHT);
         final float inset = 2f;
         StyleConstants.setLeftIndent(defaultStyle,
-                leftGap == 0 ? inset : leftGap * getFontMetrics(f).charWidth('0'));
+                leftGap == 0 ? inset : leftGap * lineRuler.getFontMetrics(f).charWidth('0'));
         StyleConstants.setRightIndent(defaultStyle, leftGap > 0 ? inset : 0);
 
-        DiffNumbersListener diffNumbersListener = new DiffNumbersListener((AbstractDocument) numbers, lineAttr);
+        DiffNumbersListener diffNumbersListener = new DiffNumbersListener((AbstractDocument) numbers, fromLines);
         diffPane.getDocument().addDocumentListener(diffNumbersListener);
         diffPane.addPropertyChangeListener("document", event -> {
             Object oldValue = event.getOldValue();
@@ -136,6 +175,7 @@ class DiffTextPane extends JScrollPane {
             Object newValue = event.getNewValue();
             if (newValue instanceof Document) {
                 ((Document) newValue).addDocumentListener(diffNumbersListener);
+                diffNumbersListener.documentChanged((AbstractDocument) newValue);
             }
         });
 
@@ -158,15 +198,32 @@ class DiffTextPane extends JScrollPane {
 
     private SwingWorker<Void, Void> loader;
 
+    /**
+     * Loads the given input in the background.
+     * <p>
+     * The text is appended to the document in batches as parsed, with the
+     * first screen of lines appended right away.  The input is read and
+     * decoded ahead, in a separate thread, so the parsing doesn't wait on
+     * I/O, as long as it's not faster than the I/O.  Text over the
+     * {@linkplain #textMemoryBudget() memory budget} is paged out to a
+     * temporary file.  The {@code loadProgress}
+     * bar is shown while loading &ndash; it is indeterminate if the input
+     * content length is not known.</p>
+     *
+     * @param   input  the input to load
+     * @param   callback  invoked on the event dispatch thread, after the
+     *          input has been loaded completely
+     */
     void load(Input input, Runnable callback) {
         if (loader != null) {
             loader.cancel(true);
         }
 
         EditorKit kit = diffPane.getEditorKit();
-        Content content = new GapContent(input.contentLength > 0 ? input.contentLength : 32 * 1024);
+        Content content = new PagedContent(input.contentLength > 0 ? input.contentLength : 32 * 1024,
+                                           textMemoryBudget());
         Document doc = new UDiffDocument(content);
-        diffPane.setDocument(doc);
+        setDocument(doc);
         if (input.url != null) {
             doc.putProperty(Document.StreamDescriptionProperty, input.url);
         } else if (input.file != null) {
@@ -178,14 +235,49 @@ class DiffTextPane extends JScrollPane {
         }
         diffPane.putClientProperty("charset", input.charset.name());
 
+        loadProgress.setIndeterminate(input.contentLength <= 0);
+        loadProgress.setValue(0);
+        loadProgress.setVisible(true);
+
         loader = new SwingWorker<Void, Void>() {
             @Override protected Void doInBackground() throws Exception {
-                try (Reader r = input.stream) {
+                DocumentListener progress = new DocumentListener() {
+                    @Override public void insertUpdate(DocumentEvent event) {
+                        // Chars vs. bytes: approximate for non-ASCII text
+                        long length = (input.bytesRead != null)
+                                      ? input.bytesRead.getAsLong()
+                                      : event.getDocument().getLength();
+                        setProgress((int) Math.min(99, length * 100 / input.contentLength));
+                    }
+                    @Override public void removeUpdate(DocumentEvent event) {/* no-op */}
+                    @Override public void changedUpdate(DocumentEvent event) {/* no-op */}
+                };
+                if (input.contentLength > 0) {
+                    doc.addDocumentListener(progress);
+                }
+                LineIndex cached = (input.file == null) ? null
+                                   : LineIndexCache.read(input.file);
+                doc.putProperty(UDiffEditorKit.INDEX_PROPERTY, cached);
+                TrigramIndex searchIndex = null;
+                if (searchIndexEnabled(input.contentLength)) {
+                    searchIndex = new TrigramIndex();
+                    doc.putProperty(TrigramIndex.PROPERTY, searchIndex);
+                }
+                try (Reader r = new ReadAheadReader(input.stream,
+                        (searchIndex == null) ? null : searchIndex.writer())) {
                     kit.read(r, doc, 0);
+                } finally {
+                    doc.removeDocumentListener(progress);
+                }
+                if (cached == null && input.file != null && !isCancelled()) {
+                    LineIndexCache.write(input.file, ((UDiffDocument) doc).getLineIndex());
                 }
                 return null;
             }
             @Override protected void done() {
+                if (loader == this) {
+                    loadProgress.setVisible(false);
+                }
                 try {
                     get(1, TimeUnit.MILLISECONDS);
                     callback.run();
@@ -204,9 +296,78 @@ class DiffTextPane extends JScrollPane {
                 DiffView.close(SwingUtilities.windowForComponent(DiffTextPane.this));
             }
         };
+        loader.addPropertyChangeListener(event -> {
+            if (event.getSource() == loader
+                    && "progress".equals(event.getPropertyName())) {
+                loadProgress.setValue((Integer) event.getNewValue());
+            }
+        });
         loader.execute();
     }
 
+    /**
+     * @return  whether the document has been read completely (or its
+     *          loading has failed)
+     */
+    boolean isLoaded() {
+        return loader == null || loader.isDone();
+    }
+
+    /**
+     * @return  the loaded document, which the {@code diffPane} may not be
+     *          showing currently
+     * @see     #setDocumentAttached(boolean)
+     */
+    Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Sets the document, and shows it in the {@code diffPane}, if attached.
+     * Fires a {@code "document"} property change of this pane.
+     */
+    private void setDocument(Document doc) {
+        Document oldDocument = document;
+        document = doc;
+        if (documentAttached) {
+            diffPane.setDocument(doc);
+        }
+        firePropertyChange("document", oldDocument, doc);
+    }
+
+    /**
+     * Detaches the document from the {@code diffPane}, or attaches it back.
+     * A detached document is replaced with an empty one, so the text pane
+     * doesn't keep up the views and line rulers of a document shown
+     * elsewhere (as they still get laid out, while hidden).
+     *
+     * @param   attached  whether to show the document in the {@code diffPane}
+     */
+    void setDocumentAttached(boolean attached) {
+        if (attached == documentAttached) return;
+
+        documentAttached = attached;
+        diffPane.setDocument(attached ? document
+                                      : diffPane.getEditorKit().createDefaultDocument());
+    }
+
+    /**
+     * @return  the {@value #TEXT_MEMORY_PROPERTY} system property value
+     *          (in MiB), or an eighth of the maximum heap size
+     */
+    private static long textMemoryBudget() {
+        Long megabytes = Long.getLong(TEXT_MEMORY_PROPERTY);
+        return (megabytes != null) ? megabytes * 1024 * 1024
+                                   : Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    private static boolean searchIndexEnabled(int contentLength) {
+        String enabled = System.getProperty(SEARCH_INDEX_PROPERTY);
+        return (enabled != null) ? Boolean.parseBoolean(enabled)
+                                 : contentLength < 0
+                                   || contentLength >= SEARCH_INDEX_THRESHOLD;
+    }
+
     private JLabel initStickyHeader() {
         JLabel context = new JLabel();
         context.setFont(diffPane.getFont());
@@ -241,17 +402,18 @@ class DiffTextPane extends JScrollPane {
     }
 
     private String findLastFile(int fromIndex) {
-        AbstractDocument doc = (AbstractDocument) diffPane.getDocument();
-        int pos = fromIndex;
-        do {
-            Element paragraph = doc.getParagraphElement(pos);
-            String file = (String) paragraph.getAttributes().getAttribute(Attribute.FILE);
+        Document doc = diffPane.getDocument();
+        if (!(doc instanceof UDiffDocument)) return null;
+
+        LineIndex lines = ((UDiffDocument) doc).getLineIndex();
+        int line = Math.min(doc.getDefaultRootElement()
+                               .getElementIndex(fromIndex), lines.size() - 1);
+        for (int entry = lines.getFileIndex(line); entry >= 0; entry--) {
+            String file = lines.getFile(entry);
             if (file != null) {
                 return file;
             }
-            pos = paragraph.getStartOffset() - 1;
-        } while (pos >= 0);
-
+        }
         return null;
     }
 
@@ -271,16 +433,16 @@ class DiffTextPane extends JScrollPane {
 
         private final AbstractDocument ruler;
 
-        private final Attribute lineAttr;
+        private final boolean fromLines;
 
         private boolean updateScheduled;
         private int start = -1;
         private int end = -1;
         private AbstractDocument doc;
 
-        DiffNumbersListener(AbstractDocument ruler, Attribute lineAttr) {
+        DiffNumbersListener(AbstractDocument ruler, boolean fromLines) {
             this.ruler = ruler;
-            this.lineAttr = lineAttr;
+            this.fromLines = fromLines;
         }
 
         @Override
@@ -298,17 +460,39 @@ class DiffTextPane extends JScrollPane {
             invalidateRuler(event);
         }
 
-        private synchronized void invalidateRuler(DocumentEvent event) {
-            int offset = event.getOffset();
+        private void invalidateRuler(DocumentEvent event) {
+            invalidateRuler((AbstractDocument) event.getDocument(),
+                            event.getOffset(), event.getLength());
+        }
+
+        /**
+         * Clears the ruler and numbers the lines of the given document,
+         * if any.  Invoked in the event dispatch thread.
+         */
+        void documentChanged(AbstractDocument source) {
+            try {
+                ruler.replace(0, ruler.getLength(), "  ", null);
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+            if (source.getLength() > 0) {
+                invalidateRuler(source, 0, source.getLength());
+            }
+        }
+
+        private synchronized void invalidateRuler(AbstractDocument source,
+                                                  int offset, int length) {
+            if (doc != null && doc != source) {
+                start = end = -1; // Pending updates of a replaced document
+            }
             start = (start < 0) ? offset : Math.min(start, offset);
-            int length = event.getLength();
             end = (end < 0) ? offset + length
                             : Math.max(end, offset + length);
+            doc = source;
             if (updateScheduled) {
                 return;
             }
             updateScheduled = true;
-            doc = (AbstractDocument) event.getDocument();
             SwingUtilities.invokeLater(() -> {
                 try {
                     updateRuler();
@@ -318,54 +502,116 @@ class DiffTextPane extends JScrollPane {
             });
         }
 
-        private synchronized void updateRuler() throws BadLocationException {
+        /**
+         * Updates the ruler lines for the pending range of source text.
+         *
+         * @implNote  The loader invokes {@code invalidateRuler} holding the
+         *          source document write lock, so the source document is
+         *          rendered only after leaving this monitor.
+         */
+        private void updateRuler() throws BadLocationException {
+            AbstractDocument source;
+            int rangeStart;
+            int rangeEnd;
+            synchronized (this) {
+                source = doc;
+                rangeStart = start;
+                rangeEnd = end;
+                start = -1;
+                end = -1;
+                doc = null;
+                updateScheduled = false;
+            }
+            if (source == null) return;
+
+            int[] range = new int[2];
+            source.render(() -> {
+                Element sourceRoot = source.getDefaultRootElement();
+                range[0] = sourceRoot.getElementIndex(rangeStart);
+                range[1] = sourceRoot.getElementIndex(rangeEnd - 1);
+            });
+            int first = range[0];
+            int last = range[1];
+
+            LineIndex lines = (source instanceof UDiffDocument)
+                              ? ((UDiffDocument) source).getLineIndex()
+                              : null;
             int rulerCount = ruler.getDefaultRootElement().getElementCount();
-            Element sourceRoot = doc.getDefaultRootElement();
-            int sourceEnd = sourceRoot.getElementIndex(end - 1);
-            for (int i = rulerCount; i <= sourceEnd; i++) {
-                ruler.insertString(ruler.getLength(), "\n", null);
+            for (int i = first, count = Math.min(last + 1, rulerCount); i < count; i++) {
+                updateNumber(i, lines);
+            }
+            if (last >= rulerCount) {
+                appendNumbers(rulerCount, last, lines);
             }
+        }
 
-            for (int i = sourceRoot.getElementIndex(start); i <= sourceEnd; i++) {
-                Element paragraph = sourceRoot.getElement(i);
-                updateNumber(i, paragraph);
+        private int number(int lineNo, LineIndex lines) {
+            if (lines == null) return 0;
+
+            return fromLines ? lines.getFromLine(lineNo)
+                             : lines.getToLine(lineNo);
+        }
+
+        private static String styleName(int lineNo, LineIndex lines) {
+            Type lineType = (lines == null) ? null : lines.getType(lineNo);
+            if (lineType == Type.REMOVED) {
+                return StyleName.DELETED_NUMBER;
+            } else if (lineType == Type.ADDED) {
+                return StyleName.INSERTED_NUMBER;
             }
-            start = -1;
-            end = -1;
-            doc = null;
-            updateScheduled = false;
+            return StyleContext.DEFAULT_STYLE;
         }
 
-        private void updateNumber(int lineNo, Element source) throws BadLocationException {
+        private void updateNumber(int lineNo, LineIndex lines) throws BadLocationException {
             Element rulerLine = ruler.getDefaultRootElement().getElement(lineNo);
-            AttributeSet attributes = source.getAttributes();
-            Object numStr = attributes.getAttribute(lineAttr);
-
-            String styleName = StyleContext.DEFAULT_STYLE;
-            if (numStr instanceof String) {
+            int number = number(lineNo, lines);
+            if (number > 0) {
                 ruler.replace(rulerLine.getStartOffset(),
                         rulerLine.getEndOffset() - rulerLine.getStartOffset() - 1,
-                        numStr.toString(), null);
-
-                if (lineAttr == Attribute.FROM_LINE
-                        && attributes.getAttribute(Attribute.TO_LINE) == null) {
-                    styleName = StyleName.DELETED_NUMBER;
-                } else if (lineAttr == Attribute.TO_LINE
-                        && attributes.getAttribute(Attribute.FROM_LINE) == null) {
-                    styleName = StyleName.INSERTED_NUMBER;
+                        Integer.toString(number), null);
+            }
+            setLogicalStyle(lineNo, lineNo, styleName(lineNo, lines));
+        }
+
+        /**
+         * Appends the given range of lines in a single insert, and sets
+         * their style a run of lines of the same style at a time.
+         */
+        private void appendNumbers(int fromLine, int toLine, LineIndex lines)
+                throws BadLocationException {
+            StringBuilder text = new StringBuilder();
+            for (int i = fromLine; i <= toLine; i++) {
+                text.append('\n');
+                int number = number(i, lines);
+                if (number > 0) {
+                    text.append(number);
                 }
-            } else if (lineAttr == Attribute.FROM_LINE
-                    && attributes.getAttribute(Attribute.TO_LINE) != null) {
-                styleName = StyleName.INSERTED_NUMBER;
-            } else if (lineAttr == Attribute.TO_LINE
-                    && attributes.getAttribute(Attribute.FROM_LINE) != null) {
-                styleName = StyleName.DELETED_NUMBER;
             }
+            ruler.insertString(ruler.getLength(), text.toString(), null);
+
+            int runStart = fromLine;
+            String runStyle = styleName(fromLine, lines);
+            for (int i = fromLine + 1; i <= toLine + 1; i++) {
+                String styleName = (i > toLine) ? null : styleName(i, lines);
+                if (!runStyle.equals(styleName)) {
+                    setLogicalStyle(runStart, i - 1, runStyle);
+                    runStart = i;
+                    runStyle = styleName;
+                }
+            }
+        }
 
+        private void setLogicalStyle(int fromLine, int toLine, String styleName) {
             StyledDocument rulerDoc = (StyledDocument) ruler;
             Style style = rulerDoc.getStyle(styleName);
             if (style == null) style = rulerDoc.getStyle(StyleContext.DEFAULT_STYLE);
-            rulerDoc.setLogicalStyle(rulerLine.getStartOffset(), style);
+
+            Element rulerRoot = ruler.getDefaultRootElement();
+            int offset = rulerRoot.getElement(fromLine).getStartOffset();
+            int last = rulerRoot.getElement(toLine).getStartOffset();
+            SimpleAttributeSet attrs = new SimpleAttributeSet();
+            attrs.setResolveParent(style);
+            rulerDoc.setParagraphAttributes(offset, last - offset + 1, attrs, false);
         }
 
     } // class DiffNumbersListener
@@ -5,9 +5,15 @@
 package stanio.diffview;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -19,8 +25,12 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Locale;
+import java.util.function.LongSupplier;
 
+import java.awt.BorderLayout;
 import java.awt.Font;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
@@ -30,12 +40,14 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
 import javax.swing.AbstractAction;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JRootPane;
 import javax.swing.JSplitPane;
 import javax.swing.JToggleButton;
@@ -44,7 +56,9 @@ import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.plaf.FontUIResource;
 
+import stanio.diffview.Decompression.CountingInputStream;
 import stanio.diffview.swing.tree.Trees;
+import stanio.diffview.udiff.UDiffPrinter;
 
 /**
  * The main {@code diff-view} class, providing the application command-line
@@ -63,6 +77,8 @@ public class DiffView extends JFrame {
 
     DiffOutlinePane outlinePane;
 
+    FindBar findBar;
+
     DiffView() {
         super("diff-view");
         super.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -92,6 +108,18 @@ public class DiffView extends JFrame {
             }
         }));
         viewMenu.addSeparator();
+        JCheckBoxMenuItem linesViewItem = new JCheckBoxMenuItem();
+        linesViewItem.setAction(new AbstractAction("Lightweight View") {
+            {
+                putValue(MNEMONIC_KEY, KeyEvent.VK_L);
+            }
+            @Override public void actionPerformed(ActionEvent event) {
+                viewPane.showLines(linesViewItem.isSelected());
+                viewPane.requestFocusInWindow();
+            }
+        });
+        viewMenu.add(linesViewItem);
+        viewMenu.addSeparator();
 
         AbstractAction exitAction = new AbstractAction("Exit") {
             {
@@ -138,13 +166,20 @@ public class DiffView extends JFrame {
         viewPane = new DiffCardPane();
         viewPane.setName("Diff text");
 
-        outlinePane = new DiffOutlinePane(viewPane.unifiedPane.diffPane);
+        outlinePane = new DiffOutlinePane(viewPane);
         outlinePane.setName("File outline");
 
+        findBar = new FindBar(viewPane);
+        findBar.installKeys(getRootPane());
+        JPanel viewPanel = new JPanel(new BorderLayout());
+        viewPanel.add(findBar, BorderLayout.PAGE_START);
+        viewPanel.add(viewPane, BorderLayout.CENTER);
+
         JSplitPane splitPane = new JSplitPane(JSplitPane
-                .HORIZONTAL_SPLIT, true, outlinePane, viewPane);
+                .HORIZONTAL_SPLIT, true, outlinePane, viewPanel);
         //splitPane.setOneTouchExpandable(true);
         super.add(splitPane);
+        super.add(viewPane.unifiedPane.loadProgress, BorderLayout.PAGE_END);
     }
 
     private JSplitPane getSplitPane() {
@@ -234,7 +269,13 @@ public class DiffView extends JFrame {
      * <pre>
      * diff-view example.diff
      *
-     * git diff ... | diff-view</pre>
+     * git diff ... | diff-view
+     *
+     * git diff ... | diff-view --ansi</pre>
+     * <p>
+     * With a leading {@code --ansi} or {@code --plain} option, no window is
+     * shown &ndash; the diff is printed to the standard output, with line
+     * numbers, and colored using ANSI escape sequences, or not.</p>
      *
      * @param   args  the command-line arguments provided by the JVM
      *
@@ -248,6 +289,12 @@ public class DiffView extends JFrame {
      *                  >Java Virtual Machine Startup</a> <i>(JVMS &sect;5.2)</i>
      */
     public static void main(String[] args) {
+        if (args.length > 0
+                && (args[0].equals("--ansi") || args[0].equals("--plain"))) {
+            System.exit(print(Arrays.copyOfRange(args, 1, args.length),
+                              args[0].equals("--ansi")));
+        }
+
         Prefs prefs = Prefs.load();
 
         SwingUtilities.invokeLater(() -> {
@@ -283,6 +330,33 @@ public class DiffView extends JFrame {
          });
     }
 
+    /**
+     * Prints the diff to the standard output, without a GUI.
+     *
+     * @param   args  the source arguments
+     * @param   ansi  whether to color the output
+     * @return  the exit code
+     */
+    static int print(String[] args, boolean ansi) {
+        Input input;
+        try {
+            input = resolveInput(args, null);
+        } catch (InputException e) {
+            e.printMessage();
+            return e.exitCode;
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), outputEncoding()), 64 * 1024);
+        try (Reader in = new ReadAheadReader(input.stream)) {
+            new UDiffPrinter(out, ansi).print(in);
+            return 0;
+        } catch (IOException e) {
+            System.err.println(e);
+            return 1;
+        }
+    }
+
     static void initLookAndFeel(Prefs prefs) {
         String lookAndFeel = "com.formdev.flatlaf.FlatIntelliJLaf";
         if (prefs.darkTheme) {
@@ -316,9 +390,11 @@ public class DiffView extends JFrame {
     static Input resolveInput(String[] args, Window parent) throws InputException {
         try {
             if (args.length == 0 && System.console() == null) {
-                return new Input(fileEncoding(), new BufferedReader(
-                        new InputStreamReader(System.in, fileEncoding())),
-                        Math.max(System.in.available(), 32 * 1024));
+                CountingInputStream in = new CountingInputStream(System.in);
+                // Unknown length, as available() tells just what is buffered
+                Input input = new Input(fileEncoding(), streamReader(in, fileEncoding()), -1);
+                input.bytesRead = in::getCount;
+                return input;
             } else if (args.length == 1) {
                     return openStream(args[0]);
             }
@@ -328,7 +404,8 @@ public class DiffView extends JFrame {
                     "Error", JOptionPane.ERROR_MESSAGE, 1);
         }
         throw new InputException(new Object[] {
-                    "diff-view <source>", "", "diff ... | diff-view" },
+                    "diff-view [--ansi | --plain] <source>", "",
+                    "diff ... | diff-view [--ansi | --plain]" },
                     "Usage", JOptionPane.INFORMATION_MESSAGE, 2);
     }
 
@@ -339,23 +416,52 @@ public class DiffView extends JFrame {
             URL url = new URI(source).toURL();
             URLConnection con = url.openConnection();
             Charset charset = getContentCharset(con);
-            con.getContentLength();
-            return new Input(url, charset, new BufferedReader(
-                    new InputStreamReader(con.getInputStream(), charset)),
-                    con.getContentLength());
+            CountingInputStream in = new CountingInputStream(con.getInputStream());
+            Input input = new Input(url, charset, streamReader(in, charset),
+                                    con.getContentLength());
+            input.bytesRead = in::getCount;
+            return input;
         } catch (URISyntaxException | IllegalArgumentException | MalformedURLException e) {
             Path file = Paths.get(source);
-            return new Input(file, fileEncoding(),
-                    Files.newBufferedReader(file, fileEncoding()),
-                    (int) Files.size(file));
+            int size = (int) Math.min(Files.size(file), Integer.MAX_VALUE);
+            if (!Decompression.isCompressed(file)) {
+                Reader reader = new MappedFileReader(file, fileEncoding());
+                // Try to detect some errors early.  Not for streams, which
+                // would be read (and decompressed) in the calling thread.
+                reader.mark(4096);
+                reader.skip(1024);
+                reader.reset();
+                return new Input(file, fileEncoding(), reader, size);
+            }
+            CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+            Input input = new Input(file, fileEncoding(),
+                                    streamReader(in, fileEncoding()), size);
+            input.bytesRead = in::getCount;
+            return input;
         }
     }
 
+    /**
+     * @return  a reader of the given stream, decompressed if gzip or zip
+     *          compressed
+     */
+    private static Reader streamReader(InputStream in, Charset charset) {
+        return new BufferedReader(new InputStreamReader(
+                Decompression.decompressing(in), charset));
+    }
+
     private static Charset getContentCharset(URLConnection con) {
-        String encoding = con.getContentEncoding();
+        // Content-Type: text/x-diff; charset=...
+        String contentType = con.getContentType();
+        int index = (contentType == null) ? -1
+                    : contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return StandardCharsets.UTF_8;
+        }
+        String encoding = contentType.substring(index + 8)
+                .replaceFirst("[;,\\s].*", "").replace("\"", "");
         try {
-            return encoding == null ? StandardCharsets.UTF_8
-                                    : Charset.forName(encoding);
+            return Charset.forName(encoding);
         } catch (IllegalArgumentException e) {
             System.err.println(e);
             return StandardCharsets.UTF_8;
@@ -366,6 +472,17 @@ public class DiffView extends JFrame {
         return StandardCharsets.UTF_8;
     }
 
+    private static Charset outputEncoding() {
+        // Java 19+ provides the console encoding
+        String encoding = System.getProperty("stdout.encoding");
+        try {
+            return encoding == null ? Charset.defaultCharset()
+                                    : Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
 
     static class Input {
 
@@ -374,22 +491,21 @@ public class DiffView extends JFrame {
         Charset charset;
         Reader stream;
         int contentLength = -1;
+        /** Input bytes consumed, if reading a stream, otherwise {@code null} */
+        LongSupplier bytesRead;
 
-        Input(Charset charset, Reader stream, int contentLength) throws IOException {
+        Input(Charset charset, Reader stream, int contentLength) {
             this.charset = charset;
             this.stream = stream;
-            // Try to detect some errors early
-            stream.mark(4096);
-            stream.skip(1024);
-            stream.reset();
+            this.contentLength = contentLength;
         }
 
-        Input(Path file, Charset charset, Reader stream, int contentLength) throws IOException {
+        Input(Path file, Charset charset, Reader stream, int contentLength) {
             this(charset, stream, contentLength);
             this.file = file;
         }
 
-        Input(URL url, Charset charset, Reader stream, int contentLength) throws IOException {
+        Input(URL url, Charset charset, Reader stream, int contentLength) {
             this(charset, stream, contentLength);
             this.url = url;
         }
@@ -416,6 +532,16 @@ public class DiffView extends JFrame {
             return (InputException) super.initCause(cause);
         }
 
+        void printMessage() {
+            if (message instanceof Object[]) {
+                for (Object line : (Object[]) message) {
+                    System.err.println(line);
+                }
+            } else {
+                System.err.println(message);
+            }
+        }
+
         void showMessage() {
             JOptionPane messagePane = new JOptionPane(message, messageType);
             JFrame window = new JFrame("diff-view - " + title);
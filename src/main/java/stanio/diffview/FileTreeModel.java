@@ -7,6 +7,7 @@ package stanio.diffview;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 import javax.swing.event.TreeModelEvent;
@@ -25,6 +26,14 @@ class FileTreeModel implements TreeModel {
 
         List<Node> children = Collections.emptyList();
 
+        private String path;
+
+        private char[] foldedPath;
+
+        /** The last {@code FuzzyFilter} score, and its filter stamp. */
+        int filterScore;
+        int filterStamp;
+
         Node(String name) {
             this.name = Objects.requireNonNull(name);
         }
@@ -47,6 +56,39 @@ class FileTreeModel implements TreeModel {
             children.add(child);
         }
 
+        /**
+         * @param   treePath  the tree path to this node
+         * @return  the path of this node, excluding the root name,
+         *          computed once
+         */
+        String path(TreePath treePath) {
+            String joined = path;
+            if (joined == null) {
+                StringBuilder buf = new StringBuilder();
+                for (int i = 1, count = treePath.getPathCount(); i < count; i++) {
+                    if (i > 1) buf.append('/');
+                    buf.append(treePath.getPathComponent(i));
+                }
+                joined = buf.toString();
+                path = joined;
+            }
+            return joined;
+        }
+
+        /**
+         * @param   treePath  the tree path to this node
+         * @return  the lower-case path of this node, excluding the root
+         *          name, computed once
+         */
+        char[] foldedPath(TreePath treePath) {
+            char[] folded = foldedPath;
+            if (folded == null) {
+                folded = path(treePath).toLowerCase(Locale.ROOT).toCharArray();
+                foldedPath = folded;
+            }
+            return folded;
+        }
+
         @Override
         public String toString() {
             return name;
@@ -0,0 +1,417 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.ActionMap;
+import javax.swing.BorderFactory;
+import javax.swing.InputMap;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+
+import stanio.diffview.swing.text.DocumentSegment;
+import stanio.diffview.swing.text.TextFinder;
+import stanio.diffview.swing.text.TrigramIndex;
+
+/**
+ * Find bar for the (large) unified view of a diff.
+ * <p>
+ * The search runs in a background thread, over the document content
+ * accessed through a {@code DocumentSegment}, in steps of {@value
+ * #SEARCH_STEP} chars, and the hits found are streamed back to the event
+ * dispatch thread after every step.  Typing in the query field cancels
+ * the search in progress and starts a new one, going to the first hit
+ * after the caret as soon as found.  The query is matched case-insensitively
+ * unless it contains upper-case letters.</p>
+ * <p>
+ * If the document has a complete {@link TrigramIndex#PROPERTY
+ * TrigramIndex}, only the blocks of lines it lists as candidates are
+ * searched.</p>
+ * <p>
+ * Only the current hit is highlighted.  Moving to a hit moves the caret of
+ * the unified view, whichever component shows it.</p>
+ *
+ * @see  TextFinder
+ * @see  DiffCardPane
+ */
+@SuppressWarnings("serial")
+class FindBar extends JPanel {
+
+    static final int SEARCH_STEP = 1024 * 1024;
+
+    private static final Color CURRENT_HIT_COLOR = new Color(255, 200, 0, 128);
+
+    private final DiffCardPane view;
+
+    private final JTextField queryField;
+
+    private final JLabel statusLabel;
+
+    private SwingWorker<Void, int[]> search;
+
+    private int[] hits = new int[0];
+
+    private int hitCount;
+
+    private int hitLength;
+
+    private int current = -1;
+
+    /**
+     * Position to go to the first hit at or after, as soon as found, or
+     * {@code -1}.
+     */
+    private int pendingFrom = -1;
+
+    FindBar(DiffCardPane view) {
+        super(new BorderLayout(4, 0));
+        this.view = view;
+        this.queryField = new JTextField();
+        this.statusLabel = new JLabel();
+        initUI();
+        super.setVisible(false);
+    }
+
+    private void initUI() {
+        // https://www.formdev.com/flatlaf/client-properties/#JTextField
+        queryField.putClientProperty("JTextField.placeholderText", "Find (Ctrl+F)");
+        queryField.putClientProperty("JTextField.showClearButton", true);
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void removeUpdate(DocumentEvent e) { startSearch(); }
+            @Override public void insertUpdate(DocumentEvent e) { startSearch(); }
+            @Override public void changedUpdate(DocumentEvent e) {/* */}
+        });
+
+        Action nextAction = new AbstractAction("\u2193") {
+            @Override public void actionPerformed(ActionEvent event) {
+                findNext();
+            }
+        };
+        nextAction.putValue(Action.SHORT_DESCRIPTION, "Next (Enter, F3)");
+        Action previousAction = new AbstractAction("\u2191") {
+            @Override public void actionPerformed(ActionEvent event) {
+                findPrevious();
+            }
+        };
+        previousAction.putValue(Action.SHORT_DESCRIPTION, "Previous (Shift+Enter, Shift+F3)");
+        Action closeAction = new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent event) {
+                close();
+            }
+        };
+
+        ActionMap actionMap = queryField.getActionMap();
+        actionMap.put("find-next", nextAction);
+        actionMap.put("find-previous", previousAction);
+        actionMap.put("close-find", closeAction);
+        InputMap inputMap = queryField.getInputMap();
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "find-next");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER,
+                                            InputEvent.SHIFT_DOWN_MASK), "find-previous");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "close-find");
+
+        JPanel buttons = new JPanel(new BorderLayout());
+        buttons.add(toolBarButton(previousAction), BorderLayout.LINE_START);
+        buttons.add(toolBarButton(nextAction), BorderLayout.LINE_END);
+        JPanel status = new JPanel(new BorderLayout(4, 0));
+        status.add(statusLabel, BorderLayout.CENTER);
+        status.add(buttons, BorderLayout.LINE_END);
+
+        super.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        super.add(queryField, BorderLayout.CENTER);
+        super.add(status, BorderLayout.LINE_END);
+
+        view.addPropertyChangeListener("document", event -> {
+            if (isVisible()) {
+                startSearch();
+            }
+        });
+    }
+
+    private static JButton toolBarButton(Action action) {
+        JButton button = new JButton(action);
+        button.setFocusable(false);
+        // https://www.formdev.com/flatlaf/components/button/#styling
+        button.putClientProperty("JButton.buttonType", "toolBarButton");
+        return button;
+    }
+
+    /**
+     * Shows this find bar, and focuses its query field.
+     */
+    void open() {
+        boolean wasVisible = isVisible();
+        setVisible(true);
+        revalidate();
+        queryField.selectAll();
+        queryField.requestFocusInWindow();
+        if (!wasVisible) {
+            startSearch();
+        }
+    }
+
+    /**
+     * Hides this find bar, cancelling any search in progress, and selects
+     * the current hit in the unified view.
+     */
+    void close() {
+        cancelSearch();
+        view.removeHighlight();
+        if (current >= 0) {
+            int start = hits[current];
+            view.select(start, start + hitLength);
+        }
+        setVisible(false);
+        view.requestFocusInWindow();
+    }
+
+    private void cancelSearch() {
+        if (search != null) {
+            // Not interrupting: an interrupt closes FileChannels being read
+            search.cancel(false);
+            search = null;
+        }
+    }
+
+    private void startSearch() {
+        cancelSearch();
+        view.removeHighlight();
+        hitCount = 0;
+        current = -1;
+        pendingFrom = -1;
+
+        String query = queryField.getText();
+        Document doc = view.getDocument();
+        if (query.isEmpty() || doc.getLength() == 0) {
+            updateStatus();
+            return;
+        }
+
+        boolean ignoreCase = query.equals(query.toLowerCase(Locale.ROOT));
+        TextFinder finder = new TextFinder(query, ignoreCase);
+        hitLength = finder.length();
+        pendingFrom = view.getCaretPosition();
+        DocumentSegment segment = new DocumentSegment(doc);
+        int length = segment.length();
+        Object trigrams = doc.getProperty(TrigramIndex.PROPERTY);
+        TrigramIndex searchIndex = (trigrams instanceof TrigramIndex)
+                                   ? (TrigramIndex) trigrams : null;
+        search = new SwingWorker<Void, int[]>() {
+            private int[] found = new int[64];
+            private int count;
+            private int resume;
+
+            @Override protected Void doInBackground() {
+                int[] blocks = candidateBlocks();
+                if (blocks == null) {
+                    for (int pos = 0; pos < length && !isCancelled(); pos += SEARCH_STEP) {
+                        scan(pos, Math.min(length, pos + SEARCH_STEP + hitLength - 1));
+                        publishFound();
+                    }
+                    return null;
+                }
+
+                int stepEnd = SEARCH_STEP;
+                for (int i = 0; i < blocks.length && !isCancelled(); i++) {
+                    int start = searchIndex.getBlockStart(blocks[i]);
+                    if (start >= length) break;
+
+                    if (start >= stepEnd) {
+                        publishFound();
+                        stepEnd = start + SEARCH_STEP;
+                    }
+                    // Blocks are whole lines, and the query doesn't span lines
+                    scan(start, Math.min(length, searchIndex.getBlockEnd(blocks[i])));
+                }
+                publishFound();
+                return null;
+            }
+            private int[] candidateBlocks() {
+                if (searchIndex == null) return null;
+
+                try {
+                    return searchIndex.candidateBlocks(query);
+                } catch (IOException e) {
+                    System.err.println("Search index: " + e);
+                    return null;
+                }
+            }
+            private void scan(int from, int to) {
+                int pos = Math.max(from, resume);
+                int index;
+                while ((index = finder.indexOf(segment, pos, to)) >= 0) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = index;
+                    pos = resume = index + hitLength;
+                }
+            }
+            private void publishFound() {
+                if (count > 0) {
+                    publish(Arrays.copyOf(found, count));
+                    count = 0;
+                }
+            }
+            @Override protected void process(List<int[]> chunks) {
+                if (search != this) return;
+
+                for (int[] chunk : chunks) {
+                    addHits(chunk);
+                }
+            }
+            @Override protected void done() {
+                if (search != this) return;
+
+                search = null;
+                if (pendingFrom >= 0 && hitCount > 0) {
+                    // Wrap around
+                    pendingFrom = -1;
+                    goTo(0);
+                } else {
+                    updateStatus();
+                }
+            }
+        };
+        updateStatus();
+        search.execute();
+    }
+
+    private void addHits(int[] chunk) {
+        int start = hitCount;
+        if (start + chunk.length > hits.length) {
+            hits = Arrays.copyOf(hits, Math.max(start + chunk.length, hits.length * 2));
+        }
+        System.arraycopy(chunk, 0, hits, start, chunk.length);
+        hitCount += chunk.length;
+
+        if (pendingFrom >= 0) {
+            int index = firstHitFrom(pendingFrom);
+            if (index < hitCount) {
+                pendingFrom = -1;
+                goTo(index);
+                return;
+            }
+        }
+        updateStatus();
+    }
+
+    /**
+     * @return  the index of the first hit at or after the given position,
+     *          or {@code hitCount} if none found (yet)
+     */
+    private int firstHitFrom(int position) {
+        int index = Arrays.binarySearch(hits, 0, hitCount, position);
+        return (index < 0) ? -index - 1 : index;
+    }
+
+    void findNext() {
+        if (!isVisible()) {
+            open();
+            return;
+        }
+        int from = atCurrentHit() ? hits[current] + 1
+                                  : view.getCaretPosition();
+        int index = firstHitFrom(from);
+        if (index < hitCount) {
+            goTo(index);
+        } else if (search != null) {
+            pendingFrom = from; // As soon as found
+        } else if (hitCount > 0) {
+            goTo(0);
+        }
+    }
+
+    void findPrevious() {
+        if (!isVisible()) {
+            open();
+            return;
+        }
+        pendingFrom = -1;
+        int before = atCurrentHit() ? hits[current]
+                                    : view.getCaretPosition();
+        int index = firstHitFrom(before) - 1;
+        if (index >= 0) {
+            goTo(index);
+        } else if (hitCount > 0 && search == null) {
+            goTo(hitCount - 1);
+        }
+    }
+
+    /**
+     * @return  whether the caret is still at the current hit
+     */
+    private boolean atCurrentHit() {
+        return current >= 0 && view.getCaretPosition() == hits[current];
+    }
+
+    private void goTo(int index) {
+        current = index;
+        int start = hits[index];
+        int end = start + hitLength;
+        view.highlight(start, end, CURRENT_HIT_COLOR);
+        view.scrollRangeToVisible(start, end);
+        view.setCaretPosition(start);
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        String status;
+        if (queryField.getText().isEmpty()) {
+            status = "";
+        } else if (search != null) {
+            status = (current >= 0) ? (current + 1) + " of " + hitCount + "\u2026"
+                                    : hitCount + "\u2026";
+        } else if (hitCount == 0) {
+            status = "No results";
+        } else {
+            status = (current >= 0) ? (current + 1) + " of " + hitCount
+                                    : hitCount + " found";
+        }
+        statusLabel.setText(status);
+    }
+
+    /**
+     * Binds Ctrl+F to open this find bar, and F3/Shift+F3 to go to the
+     * next/previous hit, in the given component's window.
+     */
+    void installKeys(JComponent comp) {
+        ActionMap actionMap = comp.getActionMap();
+        actionMap.put("open-find", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent event) {
+                open();
+            }
+        });
+        actionMap.put("find-next", queryField.getActionMap().get("find-next"));
+        actionMap.put("find-previous", queryField.getActionMap().get("find-previous"));
+        InputMap inputMap = comp.getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F,
+                                            InputEvent.CTRL_DOWN_MASK), "open-find");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "find-next");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3,
+                                            InputEvent.SHIFT_DOWN_MASK), "find-previous");
+    }
+
+}
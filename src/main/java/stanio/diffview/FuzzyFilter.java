@@ -0,0 +1,130 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.util.function.Predicate;
+
+import javax.swing.tree.TreePath;
+
+/**
+ * Matches file tree paths containing the (lower-case) query chars in
+ * order, not necessarily adjacent, like IDE "quick open" dialogs do.
+ * <p>
+ * Matches are scored higher for query chars adjacent to each other, at
+ * the start of path components or words, and in the file name.  The query
+ * is matched backwards from the end of the path, so the file name gets
+ * the most of it.  The scores are kept in the leaf nodes tested, stamped
+ * with the filter they are for.</p>
+ * <p>
+ * A filter for a query extending the query of the previous filter tests
+ * just the paths the previous one has matched (or not tested), so typing
+ * narrows down the previous results, instead of starting over.  Filters
+ * may be tested in a background thread, but by a single thread at a
+ * time.</p>
+ *
+ * @see  FileTreeModel.Node#foldedPath(TreePath)
+ */
+class FuzzyFilter implements Predicate<TreePath> {
+
+    static final int NO_MATCH = -1;
+
+    private static final int CONSECUTIVE_BONUS = 6;
+    private static final int BOUNDARY_BONUS = 6;
+    private static final int NAME_BONUS = 2;
+
+    private static int lastStamp;
+
+    private final String query;
+
+    private final char[] queryChars;
+
+    private final int stamp;
+
+    private final int previousStamp;
+
+    /**
+     * @param   query  the lower-case query
+     * @param   previous  the filter for the previous query, or {@code null}
+     */
+    FuzzyFilter(String query, FuzzyFilter previous) {
+        this.query = query;
+        this.queryChars = query.toCharArray();
+        this.stamp = ++lastStamp;
+        this.previousStamp = (previous != null
+                              && query.startsWith(previous.query))
+                             ? previous.stamp
+                             : 0;
+    }
+
+    @Override
+    public boolean test(TreePath path) {
+        FileTreeModel.Node node = (FileTreeModel.Node) path.getLastPathComponent();
+        if (node.filterStamp != stamp) {
+            if (node.filterStamp != previousStamp
+                    || previousStamp == 0
+                    || node.filterScore != NO_MATCH) {
+                node.filterScore = score(node.foldedPath(path), queryChars);
+            }
+            node.filterStamp = stamp;
+        }
+        return node.filterScore != NO_MATCH;
+    }
+
+    /**
+     * @param   node  a leaf node of the file tree
+     * @return  the score of the given node, or {@code NO_MATCH} if not
+     *          matched, or not tested
+     */
+    int scoreOf(Object node) {
+        FileTreeModel.Node leaf = (FileTreeModel.Node) node;
+        return (leaf.filterStamp == stamp) ? leaf.filterScore : NO_MATCH;
+    }
+
+    /**
+     * @param   text  lower-case text to match
+     * @param   query  lower-case query
+     * @return  the match score, or {@code NO_MATCH} if the text doesn't
+     *          contain the query chars in order
+     */
+    static int score(char[] text, char[] query) {
+        int nameStart = 0;
+        for (int i = text.length - 1; i >= 0; i--) {
+            if (text[i] == '/') {
+                nameStart = i + 1;
+                break;
+            }
+        }
+
+        int score = 0;
+        int next = text.length;
+        for (int q = query.length - 1; q >= 0; q--) {
+            char ch = query[q];
+            int pos = next - 1;
+            while (pos >= 0 && text[pos] != ch) {
+                pos--;
+            }
+            if (pos < 0) return NO_MATCH;
+
+            score++;
+            if (pos + 1 == next && q < query.length - 1) {
+                score += CONSECUTIVE_BONUS;
+            }
+            if (pos == 0 || isWordStart(text[pos - 1])) {
+                score += BOUNDARY_BONUS;
+            }
+            if (pos >= nameStart) {
+                score += NAME_BONUS;
+            }
+            next = pos;
+        }
+        return score;
+    }
+
+    private static boolean isWordStart(char prev) {
+        return prev == '/' || prev == '.' || prev == '_'
+                || prev == '-' || prev == ' ';
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code Reader} decoding a memory-mapped file.
+ * <p>
+ * Bytes are decoded straight from the mapped buffer into the destination
+ * array of {@code read(char[], int, int)}, bypassing the intermediate byte
+ * and char buffers of {@code InputStreamReader} and {@code BufferedReader}.
+ * Larger files are mapped in consecutive regions of up to {@value
+ * #REGION_SIZE} bytes.</p>
+ * <p>
+ * If the charset encodes the newline as a single {@code 0x0A} byte (as
+ * UTF-8 does, and any other ASCII-compatible charset), bulk reads end at
+ * a line boundary whenever there's at least one complete line available,
+ * so consumers receive whole lines.  The boundary is found by scanning the
+ * mapped bytes, before decoding.</p>
+ */
+final class MappedFileReader extends Reader {
+
+    static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final CharsetDecoder decoder;
+
+    private final boolean alignLines;
+
+    private MappedByteBuffer region;
+
+    private long regionStart;
+
+    private long markPosition;
+
+    private boolean eof;
+
+    private int pendingChar = -1;
+
+    MappedFileReader(Path file, Charset charset) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.alignLines = (charset == StandardCharsets.UTF_8)
+                || "\n".equals(new String(new byte[] { '\n' }, charset));
+    }
+
+    private long position() {
+        return (region == null) ? 0 : regionStart + region.position();
+    }
+
+    private boolean mapRegion(long position) throws IOException {
+        if (position >= size) {
+            return false;
+        }
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_ONLY,
+                position, Math.min(REGION_SIZE, size - position));
+        return true;
+    }
+
+    private boolean ensureAvailable(int minBytes) throws IOException {
+        if (region == null) {
+            return mapRegion(0);
+        }
+        if (region.remaining() >= minBytes
+                || regionStart + region.limit() >= size) {
+            return region.hasRemaining();
+        }
+        // Remap starting from the current position, so incomplete
+        // multi-byte sequences at the region end are decoded whole.
+        return mapRegion(position());
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) return 0;
+
+        if (pendingChar >= 0) {
+            cbuf[off] = (char) pendingChar;
+            pendingChar = -1;
+            return 1;
+        }
+        if (len == 1) {
+            // Leave room for a surrogate pair
+            char[] pair = new char[2];
+            int count = read(pair, 0, 2);
+            if (count > 0) {
+                cbuf[off] = pair[0];
+                if (count > 1) pendingChar = pair[1];
+                return 1;
+            }
+            return count;
+        }
+
+        CharBuffer dst = CharBuffer.wrap(cbuf, off, len);
+        while (dst.position() == off) {
+            if (eof || !ensureAvailable(Math.max(len, 8))) {
+                return finish(dst, off);
+            }
+
+            ByteBuffer src = region;
+            int limit = src.limit();
+            // The decoder stops at a full dst, leaving the rest for the next read
+            int end = src.position() + Math.min(Math.max(len, 8), src.remaining());
+            boolean endOfInput = (end == limit) && regionStart + limit >= size;
+            if (alignLines && !endOfInput) {
+                int eol = lastNewline(src, src.position(), end);
+                if (eol > 0) end = eol;
+            }
+            src.limit(end);
+            try {
+                decoder.decode(src, dst, endOfInput);
+            } finally {
+                src.limit(limit);
+            }
+            if (endOfInput && !src.hasRemaining()) {
+                return finish(dst, off);
+            }
+        }
+        return dst.position() - off;
+    }
+
+    /**
+     * @return  the index following the last {@code '\n'} in the given range,
+     *          or {@code -1} if not found
+     */
+    private static int lastNewline(ByteBuffer buf, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buf.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private int finish(CharBuffer dst, int off) {
+        if (!eof) {
+            decoder.decode(EMPTY, dst, true);
+            decoder.flush(dst);
+            eof = true;
+        }
+        int count = dst.position() - off;
+        return (count == 0) ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        char[] buf = new char[(int) Math.min(n, 4096)];
+        long remaining = n;
+        int count;
+        while (remaining > 0 && (count = read(buf, 0,
+                (int) Math.min(remaining, buf.length))) >= 0) {
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        ensureOpen();
+        return position() < size;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        ensureOpen();
+        markPosition = position();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        ensureOpen();
+        decoder.reset();
+        eof = false;
+        pendingChar = -1;
+        if (markPosition < regionStart
+                || region == null
+                || markPosition > regionStart + region.limit()) {
+            if (!mapRegion(markPosition)) {
+                region = null;
+            }
+        } else {
+            region.position((int) (markPosition - regionStart));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        region = null;
+    }
+
+}
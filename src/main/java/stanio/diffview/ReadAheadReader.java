@@ -0,0 +1,200 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A {@code Reader} reading ahead from another one in a separate thread.
+ * <p>
+ * The source is read (and decoded, for an {@code InputStreamReader} or a
+ * {@code MappedFileReader}) into a ring of {@value #CHUNK_COUNT} chunks of
+ * {@value #CHUNK_SIZE} chars, preallocated, which are then handed to the
+ * consuming thread in order.  The read-ahead thread waits while all the
+ * chunks are full, so the amount of text read ahead is bounded, and the
+ * consuming thread waits while there are no chunks filled, yet.  I/O and
+ * decoding thus overlap with the processing of the text read.</p>
+ * <p>
+ * The text read may be copied to another ({@code tee}) writer, in the
+ * read-ahead thread, f.e. to build an index of it.  The tee writer is
+ * closed once the whole source has been read.</p>
+ * <p>
+ * Closing this reader stops the read-ahead thread, which then closes the
+ * source.  Interrupting the consuming thread, while waiting, makes it throw
+ * an {@code InterruptedIOException}.  Any failure of the read-ahead thread
+ * is rethrown by the consuming thread as an {@code IOException}.</p>
+ */
+final class ReadAheadReader extends Reader {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int CHUNK_COUNT = 8;
+
+    private final Reader source;
+
+    private final Writer tee;
+
+    private final char[][] chunks;
+
+    private final int[] lengths;
+
+    // Guarded by lock
+    private int head;
+    private int tail;
+    private int filled;
+    private boolean eof;
+    private IOException error;
+    private boolean closed;
+
+    // Accessed by the consuming thread, only
+    private int readPos;
+
+    ReadAheadReader(Reader source) {
+        this(source, null);
+    }
+
+    /**
+     * @param   source  the reader to read ahead from
+     * @param   tee  writer to copy the text read to, or {@code null}
+     */
+    ReadAheadReader(Reader source, Writer tee) {
+        this(source, tee, CHUNK_COUNT, CHUNK_SIZE);
+    }
+
+    ReadAheadReader(Reader source, Writer tee, int chunkCount, int chunkSize) {
+        this.source = source;
+        this.tee = tee;
+        this.chunks = new char[chunkCount][chunkSize];
+        this.lengths = new int[chunkCount];
+        Thread thread = new Thread(this::readAhead, "diff-view read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs in the read-ahead thread.  Every chunk gets the result of a single
+     * read from the source, so text is handed over as soon as available, f.e.
+     * from a pipe.
+     */
+    private void readAhead() {
+        try (Reader in = source) {
+            while (true) {
+                int index;
+                synchronized (lock) {
+                    while (filled == chunks.length && !closed) {
+                        lock.wait();
+                    }
+                    if (closed) return;
+
+                    index = tail;
+                }
+
+                // Chunks not filled are not accessed by the consuming thread
+                int count = in.read(chunks[index], 0, chunks[index].length);
+                if (tee != null) {
+                    if (count < 0) {
+                        tee.close();
+                    } else {
+                        tee.write(chunks[index], 0, count);
+                    }
+                }
+
+                synchronized (lock) {
+                    if (count < 0) {
+                        eof = true;
+                        lock.notifyAll();
+                        return;
+                    }
+                    lengths[index] = count;
+                    tail = (tail + 1) % chunks.length;
+                    filled += 1;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new InterruptedIOException());
+        } catch (RuntimeException | Error e) {
+            // F.e. InternalError from a mapped file truncated while reading
+            fail(new IOException(e.toString(), e));
+        }
+    }
+
+    /**
+     * Hands the given error to the consuming thread, so it doesn't wait
+     * for more text forever.
+     */
+    private void fail(IOException e) {
+        synchronized (lock) {
+            error = e;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        int index;
+        synchronized (lock) {
+            try {
+                while (filled == 0 && !eof && error == null && !closed) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (filled == 0) {
+                if (error != null) throw error;
+
+                return -1;
+            }
+            index = head;
+        }
+
+        // The filled chunks are not accessed by the read-ahead thread
+        int count = Math.min(len, lengths[index] - readPos);
+        System.arraycopy(chunks[index], readPos, cbuf, off, count);
+        readPos += count;
+        if (readPos == lengths[index]) {
+            readPos = 0;
+            synchronized (lock) {
+                head = (head + 1) % chunks.length;
+                filled -= 1;
+                lock.notifyAll();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean ready() {
+        synchronized (lock) {
+            return filled > 0;
+        }
+    }
+
+    /**
+     * Stops the read-ahead thread without waiting for it &ndash; the
+     * source is closed once the read-ahead thread gets back from any read
+     * in progress.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+
+import stanio.diffview.udiff.LineIndex;
+import stanio.diffview.udiff.ParseResult.Type;
+import stanio.diffview.udiff.UDiffDocument;
+import stanio.diffview.udiff.UDiffDocument.StyleName;
+import stanio.diffview.udiff.WordDiff;
+
+/**
+ * Highlights the changed words of the change blocks (a run of removed lines
+ * followed by a run of added lines) in and near the visible part of a diff
+ * text component.
+ * <p>
+ * The word differences are computed in the common {@code ForkJoinPool}, only
+ * for change blocks within {@value #MARGIN_LINES} lines of the viewport, and
+ * are cached per block.  Highlights of blocks scrolled far out of view are
+ * removed, so the number of highlights stays proportional to the viewport
+ * size.  Blocks of more than {@value #MAX_BLOCK_LINES} lines are not
+ * highlighted.</p>
+ *
+ * @see  WordDiff
+ */
+class WordDiffHighlighter
+        implements ChangeListener, DocumentListener, PropertyChangeListener {
+
+    static final int MARGIN_LINES = 200;
+
+    static final int MAX_BLOCK_LINES = 1000;
+
+    static final int CACHE_SIZE = 1000;
+
+    private final JTextComponent text;
+
+    private final JViewport viewport;
+
+    private final Map<Integer, Block> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final Map<Integer, Object[]> highlights = new HashMap<>();
+
+    private final Set<Integer> pending = new HashSet<>();
+
+    private boolean updateScheduled;
+
+    private WordDiffHighlighter(JTextComponent text, JViewport viewport) {
+        this.text = text;
+        this.viewport = viewport;
+    }
+
+    /**
+     * Installs word-diff highlighting on the given text component, showing
+     * in the given viewport.
+     *
+     * @param   text  the diff text component
+     * @param   viewport  the viewport of the text component
+     * @return  the highlighter installed
+     */
+    static WordDiffHighlighter install(JTextComponent text, JViewport viewport) {
+        WordDiffHighlighter highlighter = new WordDiffHighlighter(text, viewport);
+        viewport.addChangeListener(highlighter);
+        text.addPropertyChangeListener("document", highlighter);
+        text.getDocument().addDocumentListener(highlighter);
+        return highlighter;
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent event) {
+        scheduleUpdate();
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent event) {
+        Object oldValue = event.getOldValue();
+        if (oldValue instanceof Document) {
+            ((Document) oldValue).removeDocumentListener(this);
+        }
+        Object newValue = event.getNewValue();
+        if (newValue instanceof Document) {
+            ((Document) newValue).addDocumentListener(this);
+        }
+        Highlighter highlighter = text.getHighlighter();
+        for (Object[] tags : highlights.values()) {
+            for (Object tag : tags) {
+                highlighter.removeHighlight(tag);
+            }
+        }
+        highlights.clear();
+        cache.clear();
+        pending.clear();
+        scheduleUpdate();
+    }
+
+    /**
+     * Invoked in the thread modifying the document.
+     */
+    @Override
+    public void insertUpdate(DocumentEvent event) {
+        SwingUtilities.invokeLater(this::scheduleUpdate);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent event) {
+        // Diff documents are append-only
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent event) {
+        // Not affecting the text
+    }
+
+    void scheduleUpdate() {
+        if (updateScheduled) return;
+
+        updateScheduled = true;
+        SwingUtilities.invokeLater(() -> {
+            updateScheduled = false;
+            update();
+        });
+    }
+
+    private void update() {
+        Document doc = text.getDocument();
+        if (!(doc instanceof UDiffDocument)) return;
+
+        LineIndex lines = ((UDiffDocument) doc).getLineIndex();
+        Element root = doc.getDefaultRootElement();
+        Rectangle view = viewport.getViewRect();
+        int first = root.getElementIndex(text
+                .viewToModel2D(new Point(view.x, view.y))) - MARGIN_LINES;
+        int last = root.getElementIndex(text
+                .viewToModel2D(new Point(view.x, view.y + view.height))) + MARGIN_LINES;
+        first = Math.max(0, first);
+        last = Math.min(last, lines.size() - 1);
+
+        // Back up to the start of a block crossing the range start
+        int lineNo = first;
+        while (lineNo > 0 && first - lineNo < MAX_BLOCK_LINES
+                && isChange(lines.getType(lineNo - 1))) {
+            lineNo--;
+        }
+
+        Set<Integer> visible = new HashSet<>();
+        while (lineNo <= last) {
+            int start = lineNo;
+            while (lines.getType(lineNo) == Type.REMOVED) lineNo++;
+            int removedCount = lineNo - start;
+            while (lines.getType(lineNo) == Type.ADDED) lineNo++;
+            int addedCount = lineNo - start - removedCount;
+            if (lineNo == start) {
+                lineNo++;
+            } else if (removedCount > 0 && addedCount > 0
+                    && lineNo < lines.size() // Complete
+                    && lineNo - start <= MAX_BLOCK_LINES) {
+                visible.add(start);
+                showBlock(start, removedCount, addedCount);
+            }
+        }
+
+        Iterator<Map.Entry<Integer, Object[]>> iter = highlights.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Integer, Object[]> entry = iter.next();
+            if (!visible.contains(entry.getKey())) {
+                for (Object tag : entry.getValue()) {
+                    text.getHighlighter().removeHighlight(tag);
+                }
+                iter.remove();
+            }
+        }
+    }
+
+    private static boolean isChange(Type lineType) {
+        return lineType == Type.REMOVED || lineType == Type.ADDED;
+    }
+
+    private void showBlock(int startLine, int removedCount, int addedCount) {
+        if (highlights.containsKey(startLine)) return;
+
+        Block block = cache.get(startLine);
+        if (block != null) {
+            highlights.put(startLine, addHighlights(block));
+        } else if (pending.add(startLine)) {
+            UDiffDocument doc = (UDiffDocument) text.getDocument();
+            ForkJoinPool.commonPool().execute(() -> {
+                Block result = Block.compute(doc, startLine, removedCount, addedCount);
+                SwingUtilities.invokeLater(() -> {
+                    if (text.getDocument() != doc
+                            || !pending.remove(startLine)) return;
+
+                    if (result != null) {
+                        cache.put(startLine, result);
+                        scheduleUpdate();
+                    }
+                });
+            });
+        }
+    }
+
+    private Object[] addHighlights(Block block) {
+        UDiffDocument doc = (UDiffDocument) text.getDocument();
+        Highlighter.HighlightPainter deleted = painter(doc, StyleName.DELETED_WORD);
+        Highlighter.HighlightPainter inserted = painter(doc, StyleName.INSERTED_WORD);
+        int[] removed = block.diff.getRemovedRanges();
+        int[] added = block.diff.getAddedRanges();
+        Object[] tags = new Object[(removed.length + added.length) / 2];
+        int count = 0;
+        try {
+            Highlighter highlighter = text.getHighlighter();
+            for (int i = 0; i < removed.length; i += 2) {
+                tags[count++] = highlighter.addHighlight(block.removedStart + removed[i],
+                        block.removedStart + removed[i + 1], deleted);
+            }
+            for (int i = 0; i < added.length; i += 2) {
+                tags[count++] = highlighter.addHighlight(block.addedStart + added[i],
+                        block.addedStart + added[i + 1], inserted);
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        return tags;
+    }
+
+    private static Highlighter.HighlightPainter painter(UDiffDocument doc,
+                                                        String styleName) {
+        Style style = doc.getStyle(styleName);
+        Color bg = (style == null) ? null : StyleConstants.getBackground(style);
+        return new DefaultHighlighter.DefaultHighlightPainter(bg);
+    }
+
+
+    private static class Block {
+
+        final int removedStart;
+        final int addedStart;
+        final WordDiff diff;
+
+        Block(int removedStart, int addedStart, WordDiff diff) {
+            this.removedStart = removedStart;
+            this.addedStart = addedStart;
+            this.diff = diff;
+        }
+
+        /**
+         * Invoked in a background thread.
+         *
+         * @return  the block word difference, or {@code null} if the block
+         *          is not in the document, yet
+         */
+        static Block compute(UDiffDocument doc, int startLine,
+                             int removedCount, int addedCount) {
+            int[] offsets = new int[3];
+            String[] texts = new String[2];
+            doc.render(() -> {
+                Element root = doc.getDefaultRootElement();
+                int endLine = startLine + removedCount + addedCount;
+                if (endLine >= root.getElementCount()) return;
+
+                offsets[0] = root.getElement(startLine).getStartOffset();
+                offsets[1] = root.getElement(startLine + removedCount).getStartOffset();
+                offsets[2] = root.getElement(endLine).getStartOffset();
+                try {
+                    texts[0] = unmarked(doc.getText(offsets[0], offsets[1] - offsets[0]));
+                    texts[1] = unmarked(doc.getText(offsets[1], offsets[2] - offsets[1]));
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            if (texts[0] == null) return null;
+
+            return new Block(offsets[0], offsets[1],
+                             WordDiff.compute(texts[0], texts[1]));
+        }
+
+        /**
+         * Replaces the {@code '-'}/{@code '+'} line markers with spaces.
+         */
+        private static String unmarked(String lines) {
+            char[] chars = lines.toCharArray();
+            boolean lineStart = true;
+            for (int i = 0; i < chars.length; i++) {
+                if (lineStart) {
+                    chars[i] = ' ';
+                }
+                lineStart = (chars[i] == '\n');
+            }
+            return new String(chars);
+        }
+
+    } // class Block
+
+
+} // class WordDiffHighlighter
@@ -7,8 +7,11 @@ package stanio.diffview.swing;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Insets;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import javax.swing.BorderFactory;
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -49,6 +52,13 @@ import javax.swing.text.TabStop;
  * If the associated text component's {@code Document} is not a subclass of
  * {@code AbstractDocument}, ruler lines may not be adjusted automatically.</p>
  * <p>
+ * Once {@linkplain #showLineNumbers() showing line numbers}, the ruler is
+ * kept up to date incrementally, as the source document changes: as line
+ * <var>N</var> is always numbered <var>N</var>, only the lines added to
+ * or removed from the end need updating.  Changes are coalesced into a single
+ * update of the ruler content, in the event dispatch thread, so the source
+ * document may be loaded in a background thread.</p>
+ * <p>
  * The ruler content is a {@link StyledDocument} that may be augmented with
  * icons for source-folding, error, info or other indicators.  See
  * {@link JTextPane#insertIcon(javax.swing.Icon)} and {@link
@@ -62,10 +72,11 @@ public class LineRuler extends NowrapTextPane {
 
     private JTextComponent textComponent;
 
-    // TODO: Handle partial/incremental updates on source document changes
-    // and text component resizing.
+    // TODO: Handle text component resizing.
     private transient TextComponentListener documentListener;
 
+    private boolean lineNumbers;
+
     private LineRuler() {
         super(newDefaultStyledDocument());
         this.documentListener = new TextComponentListener();
@@ -130,11 +141,13 @@ public class LineRuler extends NowrapTextPane {
         JTextComponent oldValue = this.textComponent;
         if (oldValue != null) {
             oldValue.getDocument().removeDocumentListener(documentListener);
+            oldValue.removePropertyChangeListener("document", documentListener);
         }
         this.textComponent = textComponent;
         firePropertyChange("textComponent", oldValue, textComponent);
         if (textComponent != null) {
             textComponent.getDocument().addDocumentListener(documentListener);
+            textComponent.addPropertyChangeListener("document", documentListener);
         }
     }
 
@@ -145,9 +158,11 @@ public class LineRuler extends NowrapTextPane {
     }
 
     /**
-     * This would likely develop into a mode for automatic line numbering.
+     * Numbers the ruler lines after the source text lines, and keeps them
+     * updated as the source text changes.
      */
     public void showLineNumbers() {
+        lineNumbers = true;
         Document original = (textComponent != null)
                             ? textComponent.getDocument()
                             : null;
@@ -160,16 +175,35 @@ public class LineRuler extends NowrapTextPane {
         Document numbersText = getDocument();
         try {
             numbersText.remove(0, numbersText.getLength());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        updateLineNumbers(source);
+    }
+
+    /**
+     * Appends numbers for the source lines not yet numbered, in a single
+     * insert, or removes the numbers of lines no longer present.
+     */
+    void updateLineNumbers(AbstractDocument source) {
+        int[] lineCount = new int[1];
+        source.render(() -> lineCount[0] =
+                source.getDefaultRootElement().getElementCount());
 
-            Element last = null;
-            Element paragraph = source.getParagraphElement(0);
-            int lineNo = 1;
-            while (paragraph != last) {
-                numbersText.insertString(numbersText.getLength(),
-                                         Integer.toString(lineNo++), null);
-                numbersText.insertString(numbersText.getLength(), "\n", null);
-                last = paragraph;
-                paragraph = source.getParagraphElement(last.getEndOffset());
+        // Every source line is numbered as "N\n"
+        Document numbersText = getDocument();
+        Element numbersRoot = numbersText.getDefaultRootElement();
+        int numbered = numbersRoot.getElementCount() - 1;
+        try {
+            if (numbered < lineCount[0]) {
+                StringBuilder buf = new StringBuilder();
+                for (int lineNo = numbered + 1; lineNo <= lineCount[0]; lineNo++) {
+                    buf.append(lineNo).append('\n');
+                }
+                numbersText.insertString(numbersText.getLength(), buf.toString(), null);
+            } else if (numbered > lineCount[0]) {
+                int offset = numbersRoot.getElement(lineCount[0]).getStartOffset();
+                numbersText.remove(offset, numbersText.getLength() - offset);
             }
         } catch (BadLocationException e) {
             e.printStackTrace();
@@ -177,27 +211,68 @@ public class LineRuler extends NowrapTextPane {
     }
 
 
-    private class TextComponentListener implements DocumentListener {
+    private class TextComponentListener
+            implements DocumentListener, PropertyChangeListener {
+
+        private boolean updateScheduled;
 
         TextComponentListener() {/* no-op */}
 
         @Override
         public void removeUpdate(DocumentEvent e) {
-            debugEvent(e);
+            linesChanged(e);
         }
 
         @Override
         public void insertUpdate(DocumentEvent e) {
-            debugEvent(e);
+            linesChanged(e);
         }
 
         @Override
         public void changedUpdate(DocumentEvent e) {
-            debugEvent(e);
+            // Doesn't change the line count
+        }
+
+        /**
+         * Invoked in the thread modifying the source document.
+         */
+        private synchronized void linesChanged(DocumentEvent e) {
+            if (updateScheduled || !(e.getDocument() instanceof AbstractDocument))
+                return;
+
+            DocumentEvent.ElementChange change =
+                    e.getChange(e.getDocument().getDefaultRootElement());
+            if (change == null
+                    || change.getChildrenAdded().length
+                            == change.getChildrenRemoved().length)
+                return; // Same line count
+
+            updateScheduled = true;
+            AbstractDocument source = (AbstractDocument) e.getDocument();
+            SwingUtilities.invokeLater(() -> {
+                synchronized (this) {
+                    updateScheduled = false;
+                }
+                if (lineNumbers && textComponent != null
+                        && textComponent.getDocument() == source) {
+                    updateLineNumbers(source);
+                }
+            });
         }
 
-        private void debugEvent(DocumentEvent e) {
-            //System.out.append("<> ").println(e);
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            Object oldValue = event.getOldValue();
+            if (oldValue instanceof Document) {
+                ((Document) oldValue).removeDocumentListener(this);
+            }
+            Object newValue = event.getNewValue();
+            if (newValue instanceof Document) {
+                ((Document) newValue).addDocumentListener(this);
+            }
+            if (lineNumbers && newValue instanceof AbstractDocument) {
+                initLineNumbers((AbstractDocument) newValue);
+            }
         }
 
     } // class TextComponentListener
@@ -0,0 +1,351 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.util.Arrays;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Append-only document content storing text in fixed-size chunks, one byte
+ * per char as long as the chunk text is Latin-1.
+ * <p>
+ * Meant for read-only documents that are only loaded once (like a diff
+ * view), it uses about half the memory of {@code GapContent} for mostly
+ * ASCII text.  A chunk gets expanded to a {@code char[]} the first time
+ * a char outside the Latin-1 range gets appended to it.</p>
+ * <p>
+ * Text may only be inserted at the end of the content (before the implicit
+ * trailing newline), and may not be removed &ndash; {@code insertString()}
+ * and {@code remove()} throw {@code BadLocationException} otherwise.
+ * Positions follow the same rules as with {@code GapContent}: positions at
+ * or after the insertion point move along, except for a position at 0.</p>
+ * <p>
+ * {@link Segment#isPartialReturn() Partial} {@code getChars()} requests
+ * return at most till the end of a chunk, without copying for chunks stored
+ * as {@code char[]}.  Latin-1 chunks are expanded on demand, and the last few
+ * expanded chunks are cached.</p>
+ *
+ * @see  javax.swing.text.GapContent
+ * @see  DocumentSegment
+ */
+public class CompactContent implements AbstractDocument.Content {
+
+    static final int DEFAULT_CHUNK_SHIFT = 16;
+
+    private static final char[] NEWLINE = { '\n' };
+
+    private static final int CACHE_SIZE = 4; // power of 2
+
+    private final int chunkShift;
+    private final int chunkSize;
+    private final int chunkMask;
+
+    /**
+     * {@code byte[]} or {@code char[]} chunks.  All but the last are full.
+     */
+    private Object[] chunks;
+
+    private int chunkCount;
+
+    /**
+     * Text length excluding the implicit trailing newline.
+     */
+    private int textLength;
+
+    private final Expanded[] expandedCache = new Expanded[CACHE_SIZE];
+
+    public CompactContent() {
+        this(0);
+    }
+
+    /**
+     * Constructs a new {@code CompactContent}.
+     *
+     * @param   initialLength  expected length of the content.  Used as
+     *          a hint for pre-sizing internal structures.
+     */
+    public CompactContent(int initialLength) {
+        this(initialLength, DEFAULT_CHUNK_SHIFT);
+    }
+
+    CompactContent(int initialLength, int chunkShift) {
+        this.chunkShift = chunkShift;
+        this.chunkSize = 1 << chunkShift;
+        this.chunkMask = chunkSize - 1;
+        this.chunks = new Object[Math.max(4, (initialLength >>> chunkShift) + 1)];
+    }
+
+    @Override
+    public int length() {
+        return textLength + 1;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        return (offset >= textLength && offset > 0)
+                ? new EndPosition(offset - length())
+                : new FixedPosition(offset);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str)
+            throws BadLocationException {
+        if (where != textLength) {
+            throw new BadLocationException("Content is append-only", where);
+        }
+        append(str);
+        return null;
+    }
+
+    private void append(String str) {
+        int len = str.length();
+        int srcPos = 0;
+        while (srcPos < len) {
+            int chunkOffset = textLength & chunkMask;
+            if (chunkOffset == 0) {
+                addChunk();
+            }
+            int count = Math.min(len - srcPos, chunkSize - chunkOffset);
+            int last = chunkCount - 1;
+            Object chunk = chunks[last];
+            if (chunk instanceof byte[]
+                    && !isLatin1(str, srcPos, srcPos + count)) {
+                chunk = expand((byte[]) chunk, chunkOffset);
+                chunks[last] = chunk;
+            }
+            if (chunk instanceof byte[]) {
+                byte[] bytes = (byte[]) chunk;
+                for (int i = 0; i < count; i++) {
+                    bytes[chunkOffset + i] = (byte) str.charAt(srcPos + i);
+                }
+            } else {
+                str.getChars(srcPos, srcPos + count, (char[]) chunk, chunkOffset);
+            }
+            srcPos += count;
+            textLength += count;
+        }
+    }
+
+    private void addChunk() {
+        if (chunkCount > 0) {
+            chunkFilled(chunkCount - 1);
+        }
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = new byte[chunkSize];
+    }
+
+    private static boolean isLatin1(String str, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (str.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    private char[] expand(byte[] bytes, int count) {
+        char[] chars = new char[chunkSize];
+        for (int i = 0; i < count; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return chars;
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems)
+            throws BadLocationException {
+        throw new BadLocationException("Content is append-only", where);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment txt = new Segment();
+        getChars(where, len, txt);
+        return new String(txt.array, txt.offset, txt.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt)
+            throws BadLocationException {
+        if (where < 0) {
+            throw new BadLocationException("Invalid location", where);
+        }
+        if (len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid location", where + len);
+        }
+
+        if (where == textLength) {
+            txt.array = NEWLINE;
+            txt.offset = 0;
+            txt.count = len;
+            return;
+        }
+
+        int chunkIndex = where >>> chunkShift;
+        int chunkOffset = where & chunkMask;
+        int chunkEnd = Math.min(chunkSize, textLength - (chunkIndex << chunkShift));
+        if (chunkOffset + len <= chunkEnd
+                || txt.isPartialReturn()) {
+            int count = Math.min(len, chunkEnd - chunkOffset);
+            txt.array = chunkChars(chunkIndex, chunkOffset + count);
+            txt.offset = chunkOffset;
+            txt.count = count;
+            return;
+        }
+
+        char[] copy = new char[len];
+        int pos = where;
+        int end = where + Math.min(len, textLength - where);
+        while (pos < end) {
+            chunkIndex = pos >>> chunkShift;
+            chunkOffset = pos & chunkMask;
+            int count = Math.min(end - pos, chunkSize - chunkOffset);
+            Object chunk = chunk(chunkIndex);
+            if (chunk instanceof char[]) {
+                System.arraycopy(chunk, chunkOffset, copy, pos - where, count);
+            } else {
+                byte[] bytes = (byte[]) chunk;
+                for (int i = 0; i < count; i++) {
+                    copy[pos - where + i] = (char) (bytes[chunkOffset + i] & 0xFF);
+                }
+            }
+            pos += count;
+        }
+        if (end < where + len) {
+            copy[len - 1] = '\n';
+        }
+        txt.array = copy;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    /**
+     * @param   minCount  minimum count of initial chunk chars needed
+     */
+    private char[] chunkChars(int chunkIndex, int minCount) {
+        Object chunk = chunk(chunkIndex);
+        if (chunk instanceof char[]) {
+            return (char[]) chunk;
+        }
+
+        int slot = chunkIndex & (CACHE_SIZE - 1);
+        Expanded cached = expandedCache[slot];
+        if (cached != null
+                && cached.chunkIndex == chunkIndex
+                && cached.count >= minCount) {
+            return cached.chars;
+        }
+
+        int count = Math.min(chunkSize, textLength - (chunkIndex << chunkShift));
+        // Always a new array as segments may still refer the previous one
+        cached = new Expanded(chunkIndex, expand((byte[]) chunk, count), count);
+        expandedCache[slot] = cached;
+        return cached.chars;
+    }
+
+
+    /**
+     * @param   index  chunk index
+     * @return  the {@code byte[]} or {@code char[]} chunk at the given index
+     */
+    Object chunk(int index) {
+        return chunks[index];
+    }
+
+    /**
+     * Replaces a full chunk, f.e. to release it, or restore it.
+     *
+     * @param   index  chunk index
+     * @param   chunk  {@code byte[]} or {@code char[]} chunk, or {@code null}
+     */
+    void setChunk(int index, Object chunk) {
+        chunks[index] = chunk;
+    }
+
+    /**
+     * Invoked when a chunk gets full, before starting a new one.  The text
+     * of a full chunk doesn't change anymore.
+     *
+     * @param   index  chunk index
+     */
+    void chunkFilled(int index) {
+        // no-op
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+
+    private static final class Expanded {
+
+        final int chunkIndex;
+        final char[] chars;
+        final int count;
+
+        Expanded(int chunkIndex, char[] chars, int count) {
+            this.chunkIndex = chunkIndex;
+            this.chars = chars;
+            this.count = count;
+        }
+
+    } // class Expanded
+
+
+    private static final class FixedPosition implements Position {
+
+        private final int offset;
+
+        FixedPosition(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(offset);
+        }
+
+    } // class FixedPosition
+
+
+    /**
+     * A position at or after the insertion point &ndash; it moves along with
+     * every insert.
+     */
+    private final class EndPosition implements Position {
+
+        private final int fromEnd;
+
+        EndPosition(int fromEnd) {
+            this.fromEnd = fromEnd;
+        }
+
+        @Override
+        public int getOffset() {
+            return length() + fromEnd;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+
+    } // class EndPosition
+
+
+} // class CompactContent
@@ -71,7 +71,7 @@ public final class DocumentReader extends Reader {
 
         int read = 0, count;
         while (read < len && (count =
-                segment.getChars(position, cbuf, off + read, len - read)) != -1) {
+                segment.getChars(position + read, cbuf, off + read, len - read)) != -1) {
             read += count;
         }
         position += read;
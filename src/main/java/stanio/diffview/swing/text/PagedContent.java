@@ -0,0 +1,205 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A {@code CompactContent} keeping only the recently accessed chunks
+ * (pages) of text in memory, within a given memory budget, for content
+ * larger than the heap available.
+ * <p>
+ * Full pages are released least-recently-used first, once the pages in
+ * memory exceed the budget.  A page is written to a temporary spill file
+ * the first time it gets released, and is read back from it when accessed
+ * again.  The last page, still being appended to, is always in memory.  The
+ * spill file is created only if needed, and is deleted when this content
+ * is no longer reachable, or on exit.</p>
+ * <p>
+ * Segments returned by {@code getChars()} stay valid after their page
+ * gets released &ndash; pages read back get new arrays.  I/O errors
+ * accessing the spill file are thrown as {@code UncheckedIOException}.</p>
+ */
+public class PagedContent extends CompactContent {
+
+    private static final int NONE = -1;
+
+    private final long memoryBudget;
+
+    private long memoryUsed;
+
+    private int fullPages;
+
+    // Least-recently-used list of the full pages in memory
+    private int[] prev = new int[0];
+    private int[] next = new int[0];
+    private int head = NONE;
+    private int tail = NONE;
+
+    /**
+     * Spill file positions of the pages, shifted left by one, with the low
+     * bit set for {@code char[]} pages, or {@code -1} if not written, yet.
+     */
+    private long[] spilled = new long[0];
+
+    private SpillFile spillFile;
+
+    /**
+     * Constructs a new {@code PagedContent}.
+     *
+     * @param   initialLength  expected length of the content.  Used as
+     *          a hint for pre-sizing internal structures.
+     * @param   memoryBudget  maximum number of bytes of the full pages to
+     *          keep in memory
+     */
+    public PagedContent(int initialLength, long memoryBudget) {
+        this(initialLength, DEFAULT_CHUNK_SHIFT, memoryBudget);
+    }
+
+    PagedContent(int initialLength, int chunkShift, long memoryBudget) {
+        super(initialLength, chunkShift);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return  the number of bytes of the full pages currently in memory
+     */
+    synchronized long memoryUsed() {
+        return memoryUsed;
+    }
+
+    @Override
+    synchronized Object chunk(int index) {
+        Object chunk = super.chunk(index);
+        if (index >= fullPages) {
+            return chunk; // Last page
+        }
+
+        if (chunk == null) {
+            chunk = readPage(index);
+            setChunk(index, chunk);
+            memoryUsed += sizeOf(chunk);
+            linkFirst(index);
+            releasePages();
+        } else if (head != index) {
+            unlink(index);
+            linkFirst(index);
+        }
+        return chunk;
+    }
+
+    @Override
+    synchronized void chunkFilled(int index) {
+        ensureCapacity(index + 1);
+        fullPages = index + 1;
+        memoryUsed += sizeOf(super.chunk(index));
+        linkFirst(index);
+        releasePages();
+    }
+
+    private void ensureCapacity(int capacity) {
+        int oldLength = spilled.length;
+        if (capacity <= oldLength) return;
+
+        int newLength = Math.max(capacity, oldLength * 2);
+        prev = Arrays.copyOf(prev, newLength);
+        next = Arrays.copyOf(next, newLength);
+        spilled = Arrays.copyOf(spilled, newLength);
+        Arrays.fill(spilled, oldLength, newLength, -1);
+    }
+
+    private static long sizeOf(Object chunk) {
+        return (chunk instanceof char[])
+                ? ((char[]) chunk).length * (long) Character.BYTES
+                : ((byte[]) chunk).length;
+    }
+
+    private void linkFirst(int index) {
+        prev[index] = NONE;
+        next[index] = head;
+        if (head != NONE) {
+            prev[head] = index;
+        } else {
+            tail = index;
+        }
+        head = index;
+    }
+
+    private void unlink(int index) {
+        int p = prev[index];
+        int n = next[index];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+
+    /**
+     * Releases least-recently-used pages, but the most recent one, while
+     * over the memory budget.
+     */
+    private void releasePages() {
+        while (memoryUsed > memoryBudget && tail != head) {
+            int index = tail;
+            Object chunk = super.chunk(index);
+            if (spilled[index] < 0) {
+                spilled[index] = writePage(chunk);
+            }
+            unlink(index);
+            setChunk(index, null);
+            memoryUsed -= sizeOf(chunk);
+        }
+    }
+
+    private long writePage(Object chunk) {
+        ByteBuffer buf;
+        boolean chars = chunk instanceof char[];
+        if (chars) {
+            char[] text = (char[]) chunk;
+            buf = ByteBuffer.allocate(text.length * Character.BYTES);
+            buf.asCharBuffer().put(text);
+        } else {
+            buf = ByteBuffer.wrap((byte[]) chunk);
+        }
+        try {
+            if (spillFile == null) {
+                spillFile = SpillFile.create(this, ".pages");
+            }
+            long position = spillFile.append(buf);
+            return (position << 1) | (chars ? 1 : 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Object readPage(int index) {
+        long position = spilled[index] >>> 1;
+        boolean chars = (spilled[index] & 1) != 0;
+        int size = chunkSize();
+        ByteBuffer buf = ByteBuffer.allocate(chars ? size * Character.BYTES : size);
+        try {
+            spillFile.read(buf, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buf.flip();
+        if (chars) {
+            char[] text = new char[size];
+            buf.asCharBuffer().get(text);
+            return text;
+        }
+        return buf.array();
+    }
+
+}
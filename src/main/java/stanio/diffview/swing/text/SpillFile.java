@@ -0,0 +1,83 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only temporary file, deleted when its owner is no longer
+ * reachable, or on exit.
+ */
+final class SpillFile implements Runnable {
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final FileChannel channel;
+
+    private long length;
+
+    private SpillFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("diff-view", suffix);
+        channel = FileChannel.open(file, StandardOpenOption.READ,
+                                         StandardOpenOption.WRITE,
+                                         StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * @param   owner  the object using the spill file
+     * @param   suffix  the temporary file name suffix
+     * @return  a new spill file
+     * @throws  IOException  if an I/O error occurs
+     */
+    static SpillFile create(Object owner, String suffix) throws IOException {
+        SpillFile spillFile = new SpillFile(suffix);
+        cleaner.register(owner, spillFile);
+        return spillFile;
+    }
+
+    /**
+     * @return  the position the given bytes are written at
+     */
+    long append(ByteBuffer buf) throws IOException {
+        long position = length;
+        while (buf.hasRemaining()) {
+            length += channel.write(buf, length);
+        }
+        return position;
+    }
+
+    /**
+     * Fills the given buffer with the bytes at the given position.
+     */
+    void read(ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            int count = channel.read(buf, pos);
+            if (count < 0) {
+                throw new IOException("Unexpected end of spill file");
+            }
+            pos += count;
+        }
+    }
+
+    /**
+     * Closes, and thus deletes, the file.
+     */
+    @Override
+    public void run() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.util.Arrays;
+
+/**
+ * Finds occurrences of a literal pattern in text, using the
+ * Boyer-Moore-Horspool algorithm.
+ * <p>
+ * The text is accessed as a {@code CharSequence} &ndash; a
+ * {@code DocumentSegment} to search a document without copying its
+ * content.  The bad-character shift table is indexed by the low byte of
+ * chars, taking the smallest shift of the pattern chars sharing a low byte,
+ * so it stays small for any pattern.</p>
+ *
+ * @see  <a href="https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore%E2%80%93Horspool_algorithm"
+ *              >Boyer&ndash;Moore&ndash;Horspool algorithm</a> <i>(Wikipedia)</i>
+ */
+public final class TextFinder {
+
+    private final char[] pattern;
+
+    private final boolean ignoreCase;
+
+    private final int[] shifts = new int[256];
+
+    /**
+     * @param   pattern  the (non-empty) text to find
+     * @param   ignoreCase  whether to ignore case differences
+     */
+    public TextFinder(String pattern, boolean ignoreCase) {
+        if (pattern.isEmpty()) {
+            throw new IllegalArgumentException("Empty pattern");
+        }
+        this.ignoreCase = ignoreCase;
+        this.pattern = pattern.toCharArray();
+        if (ignoreCase) {
+            for (int i = 0; i < this.pattern.length; i++) {
+                this.pattern[i] = fold(this.pattern[i]);
+            }
+        }
+
+        int last = this.pattern.length - 1;
+        Arrays.fill(shifts, this.pattern.length);
+        for (int i = 0; i < last; i++) {
+            shifts[this.pattern[i] & 0xFF] = last - i;
+        }
+    }
+
+    static char fold(char ch) {
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    }
+
+    /**
+     * @return  the pattern length
+     */
+    public int length() {
+        return pattern.length;
+    }
+
+    /**
+     * Finds the first occurrence of the pattern within the given range of
+     * the text.
+     *
+     * @param   text  the text to search
+     * @param   from  the start of the range to search
+     * @param   to  the end of the range to search
+     * @return  the index of the first occurrence, or {@code -1} if not found
+     */
+    public int indexOf(CharSequence text, int from, int to) {
+        final char[] pattern = this.pattern;
+        final int last = pattern.length - 1;
+        final char lastChar = pattern[last];
+        for (int pos = Math.max(0, from), end = to - last; pos < end;) {
+            char ch = text.charAt(pos + last);
+            if (ignoreCase) ch = fold(ch);
+
+            if (ch == lastChar && matches(text, pos, last)) {
+                return pos;
+            }
+            pos += shifts[ch & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean matches(CharSequence text, int pos, int count) {
+        final char[] pattern = this.pattern;
+        for (int i = count - 1; i >= 0; i--) {
+            char ch = text.charAt(pos + i);
+            if (ignoreCase) ch = fold(ch);
+
+            if (ch != pattern[i]) return false;
+        }
+        return true;
+    }
+
+}
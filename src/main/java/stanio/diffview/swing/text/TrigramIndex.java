@@ -0,0 +1,409 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trigram index of (large) text, narrowing literal searches down to
+ * the blocks of lines possibly containing a match.
+ * <p>
+ * The text is split into blocks of whole lines, of about {@value
+ * #BLOCK_CHARS} chars.  For every trigram (three consecutive chars within
+ * a line, case-folded) the index lists the blocks containing it.  Trigrams
+ * are hashed into 2<sup>{@value #BUCKET_BITS}</sup> buckets &ndash; hash
+ * collisions may only add candidate blocks, which the search verifies
+ * anyway.  A query not spanning lines, and of at least 3 chars, may match
+ * only in the blocks containing all of its trigrams.</p>
+ * <p>
+ * The index is built as the text is written to its {@link #writer()
+ * writer}, in segments of about {@value #SEGMENT_PAIRS} (trigram, block)
+ * pairs.  The posting lists (block numbers) of a full segment are sorted
+ * by bucket, delta and variable-length encoded, and written to a temporary
+ * file, so the memory used doesn't grow with the text size, except for the
+ * per-segment bucket tables.  Queries read just the posting lists of the
+ * query trigrams.  The index is usable once the writer is closed.</p>
+ *
+ * @see  TextFinder
+ */
+public final class TrigramIndex {
+
+    /**
+     * Document property for the {@code TrigramIndex} of the document text.
+     */
+    public static final String PROPERTY = "stanio.diffview.trigramIndex";
+
+    static final int BLOCK_CHARS = 8 * 1024;
+
+    static final int BUCKET_BITS = 20;
+
+    static final int SEGMENT_PAIRS = 2 * 1024 * 1024;
+
+    private static final int BUCKET_MASK = (1 << BUCKET_BITS) - 1;
+
+    // Build state, accessed by the writing thread only
+    private int[] lastBlock;
+    private int[] pairBuckets;
+    private int[] pairBlocks;
+    private int pairCount;
+    private int segmentFirstBlock;
+    private int textLength;
+    private char char1;
+    private char char2;
+    private int lineChars;
+
+    private int[] blockStarts = new int[64];
+    private int blockCount = 1;
+
+    private final List<IndexSegment> segments = new ArrayList<>();
+
+    private SpillFile file;
+
+    private volatile boolean complete;
+
+    private boolean failed;
+
+    public TrigramIndex() {
+        lastBlock = new int[1 << BUCKET_BITS];
+        Arrays.fill(lastBlock, -1);
+        pairBuckets = new int[1024];
+        pairBlocks = new int[1024];
+    }
+
+    /**
+     * @return  whether the index has been completely built, and may be
+     *          queried
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns a writer to build this index from.  The text written should
+     * be the same as the indexed text, from its start.  Closing the writer
+     * completes the index.  I/O errors writing the index are reported to
+     * {@code System.err}, and leave the index incomplete, but are not
+     * thrown, so the text could be written to other destinations, as well.
+     *
+     * @return  a writer to build this index from
+     */
+    public Writer writer() {
+        return new Writer() {
+            @Override public void write(char[] cbuf, int off, int len) {
+                if (failed) return;
+
+                try {
+                    addText(cbuf, off, len);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            @Override public void flush() {/* no-op */}
+            @Override public void close() {
+                if (failed || complete) return;
+
+                try {
+                    finish();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        };
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        lastBlock = pairBuckets = pairBlocks = null;
+        System.err.println("Could not build search index: " + e);
+    }
+
+    private void addText(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            char ch = cbuf[i];
+            textLength++;
+            if (ch == '\n') {
+                lineChars = 0;
+                if (textLength - blockStarts[blockCount - 1] >= BLOCK_CHARS) {
+                    startBlock();
+                }
+                continue;
+            }
+
+            ch = TextFinder.fold(ch);
+            if (++lineChars >= 3) {
+                addTrigram(hash(char1, char2, ch));
+            }
+            char1 = char2;
+            char2 = ch;
+        }
+    }
+
+    static int hash(char c1, char c2, char c3) {
+        int h = (c1 * 31 + c2) * 31 + c3;
+        h ^= h >>> 11;
+        h *= 0x9E3779B1;
+        return (h >>> (32 - BUCKET_BITS)) & BUCKET_MASK;
+    }
+
+    private void addTrigram(int bucket) {
+        int block = blockCount - 1;
+        if (lastBlock[bucket] == block) return;
+
+        lastBlock[bucket] = block;
+        if (pairCount == pairBuckets.length) {
+            pairBuckets = Arrays.copyOf(pairBuckets, pairCount * 2);
+            pairBlocks = Arrays.copyOf(pairBlocks, pairCount * 2);
+        }
+        pairBuckets[pairCount] = bucket;
+        pairBlocks[pairCount] = block;
+        pairCount++;
+    }
+
+    private void startBlock() throws IOException {
+        if (pairCount >= SEGMENT_PAIRS) {
+            flushSegment();
+        }
+        if (blockCount == blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+        }
+        blockStarts[blockCount++] = textLength;
+    }
+
+    private void finish() throws IOException {
+        flushSegment();
+        lastBlock = pairBuckets = pairBlocks = null;
+        blockStarts = Arrays.copyOf(blockStarts, blockCount + 1);
+        blockStarts[blockCount] = textLength;
+        complete = true;
+    }
+
+    /**
+     * Writes the pending (trigram, block) pairs to the index file, as
+     * posting lists sorted by bucket.
+     */
+    private void flushSegment() throws IOException {
+        int count = pairCount;
+        if (count == 0) return;
+
+        // Counting sort by bucket, keeping the block order
+        int[] starts = new int[(1 << BUCKET_BITS) + 1];
+        for (int i = 0; i < count; i++) {
+            starts[pairBuckets[i] + 1]++;
+        }
+        int bucketCount = 0;
+        for (int b = 0; b < (1 << BUCKET_BITS); b++) {
+            if (starts[b + 1] > 0) bucketCount++;
+            starts[b + 1] += starts[b];
+        }
+        int[] sorted = new int[count];
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        for (int i = 0; i < count; i++) {
+            sorted[next[pairBuckets[i]]++] = pairBlocks[i];
+        }
+
+        int[] buckets = new int[bucketCount];
+        int[] offsets = new int[bucketCount + 1];
+        ByteBuffer out = ByteBuffer.allocate(count * 2 + 16);
+        int index = 0;
+        for (int b = 0; b < (1 << BUCKET_BITS); b++) {
+            int start = starts[b];
+            int end = starts[b + 1];
+            if (start == end) continue;
+
+            buckets[index] = b;
+            offsets[index] = out.position();
+            int prev = segmentFirstBlock;
+            for (int i = start; i < end; i++) {
+                if (out.remaining() < 5) {
+                    out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+                }
+                putVarint(out, sorted[i] - prev);
+                prev = sorted[i];
+            }
+            index++;
+        }
+        offsets[bucketCount] = out.position();
+
+        if (file == null) {
+            file = SpillFile.create(this, ".trigrams");
+        }
+        long base = file.append(out.flip());
+        segments.add(new IndexSegment(segmentFirstBlock, base, buckets, offsets));
+
+        pairCount = 0;
+        segmentFirstBlock = blockCount; // Flushed before starting a block
+        if (pairBuckets.length > SEGMENT_PAIRS * 2) {
+            pairBuckets = new int[SEGMENT_PAIRS];
+            pairBlocks = new int[SEGMENT_PAIRS];
+        }
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    /**
+     * @return  the number of text blocks indexed
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @param   block  block index
+     * @return  the text offset of the given block
+     */
+    public int getBlockStart(int block) {
+        return blockStarts[block];
+    }
+
+    /**
+     * @param   block  block index
+     * @return  the text offset after the end of the given block
+     */
+    public int getBlockEnd(int block) {
+        return blockStarts[block + 1];
+    }
+
+    /**
+     * Finds the blocks which may contain the given text.
+     *
+     * @param   query  the text to find
+     * @return  the indices of the blocks possibly containing the query
+     *          text (case-insensitively), in ascending order, or
+     *          {@code null} if the index is not complete, or not
+     *          applicable to the query (shorter than 3 chars, or
+     *          containing a newline)
+     * @throws  IOException  if an I/O error occurs reading the index
+     */
+    public int[] candidateBlocks(String query) throws IOException {
+        if (!complete || query.length() < 3 || query.indexOf('\n') >= 0) {
+            return null;
+        }
+
+        int[] buckets = new int[query.length() - 2];
+        char c1 = TextFinder.fold(query.charAt(0));
+        char c2 = TextFinder.fold(query.charAt(1));
+        for (int i = 2; i < query.length(); i++) {
+            char c3 = TextFinder.fold(query.charAt(i));
+            buckets[i - 2] = hash(c1, c2, c3);
+            c1 = c2;
+            c2 = c3;
+        }
+        Arrays.sort(buckets);
+
+        int[] result = new int[16];
+        int resultCount = 0;
+        for (IndexSegment segment : segments) {
+            int[] blocks = segment.candidates(file, buckets);
+            if (resultCount + blocks.length > result.length) {
+                result = Arrays.copyOf(result,
+                        Math.max(resultCount + blocks.length, result.length * 2));
+            }
+            System.arraycopy(blocks, 0, result, resultCount, blocks.length);
+            resultCount += blocks.length;
+        }
+        return Arrays.copyOf(result, resultCount);
+    }
+
+
+    /**
+     * The bucket table of a segment of the index file.
+     */
+    private static final class IndexSegment {
+
+        private static final int[] NONE = new int[0];
+
+        final int firstBlock;
+        final long base;
+        final int[] buckets;
+        final int[] offsets;
+
+        IndexSegment(int firstBlock, long base, int[] buckets, int[] offsets) {
+            this.firstBlock = firstBlock;
+            this.base = base;
+            this.buckets = buckets;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @param   queryBuckets  sorted buckets of the query trigrams
+         */
+        int[] candidates(SpillFile file, int[] queryBuckets) throws IOException {
+            List<int[]> lists = new ArrayList<>(queryBuckets.length);
+            int prevBucket = -1;
+            for (int bucket : queryBuckets) {
+                if (bucket == prevBucket) continue;
+
+                prevBucket = bucket;
+                int index = Arrays.binarySearch(buckets, bucket);
+                if (index < 0) return NONE;
+
+                lists.add(readList(file, index));
+            }
+            lists.sort((a, b) -> Integer.compare(a.length, b.length));
+
+            int[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+            return result;
+        }
+
+        private int[] readList(SpillFile file, int index) throws IOException {
+            int start = offsets[index];
+            ByteBuffer buf = ByteBuffer.allocate(offsets[index + 1] - start);
+            file.read(buf, base + start);
+            buf.flip();
+
+            int[] list = new int[buf.remaining()];
+            int count = 0;
+            int block = firstBlock;
+            while (buf.hasRemaining()) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buf.get();
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                block += delta;
+                list[count++] = block;
+            }
+            return Arrays.copyOf(list, count);
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int count = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length;) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+    } // class IndexSegment
+
+
+} // class TrigramIndex
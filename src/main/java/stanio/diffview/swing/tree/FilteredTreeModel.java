@@ -5,11 +5,18 @@
 package stanio.diffview.swing.tree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
@@ -17,6 +24,12 @@ import javax.swing.tree.TreePath;
 
 /**
  * Provides filtered view of another {@code TreeModel}.
+ * <p>
+ * Filtering may be done in the event dispatch thread, or in a background
+ * thread, using {@link #filterLater(Predicate)}.  The latter tests the
+ * leaf paths of a snapshot of the tree, and notifies structure changes
+ * only for the top-most nodes with changed visible children, once
+ * done.</p>
  */
 public class FilteredTreeModel
         extends ProxyTreeModel<FilteredTreeModel.Node> {
@@ -31,16 +44,36 @@ public class FilteredTreeModel
 
     private static final Predicate<TreePath> NO_FILTER = any -> true;
 
+    /**
+     * Maximum structure change events notified for background filtering,
+     * above which a single event for the root is notified, instead.
+     */
+    private static final int MAX_CHANGE_EVENTS = 256;
+
     private Predicate<TreePath> filter;
 
     private FilteredTreeNode filterBase;
 
+    private int structureVersion;
+
+    private Snapshot snapshot;
+
+    private FilterWorker pendingFilter;
+
+    private static final Executor filterExecutor =
+            Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "diff-view tree filter");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     public FilteredTreeModel(TreeModel source) {
         super(source, FilteredTreeNode.rootFor(source));
         this.filter = NO_FILTER;
     }
 
     public void filter(Predicate<TreePath> filter) {
+        cancelPendingFilter();
         this.filter = (filter == null) ? NO_FILTER : filter;
         FilteredTreeNode root = (FilteredTreeNode) getRoot();
         if (root != null) {
@@ -57,7 +90,7 @@ public class FilteredTreeModel
                                 || filter.test(node.sourcePath));
             return;
         }
-        node.visible = (filter == NO_FILTER);
+        node.setVisible(filter == NO_FILTER);
         node.children.forEach(this::filter);
     }
 
@@ -89,6 +122,72 @@ public class FilteredTreeModel
         filter(NO_FILTER);
     }
 
+    /**
+     * Filters in a background thread, cancelling any previous filtering in
+     * progress.  The predicate is tested in the background thread, with
+     * the leaf paths of a snapshot of the tree.  The new visibility is
+     * applied in the event dispatch thread, once done &ndash; if the tree
+     * structure has changed meanwhile, filtering starts over.
+     * <p>
+     * The predicate is not tested concurrently by the background filtering,
+     * even with a cancelled filtering still in progress.</p>
+     *
+     * @param   filter  the predicate for the leaf paths to show, or
+     *          {@code null} to show all
+     */
+    public void filterLater(Predicate<TreePath> filter) {
+        cancelPendingFilter();
+        this.filter = (filter == null) ? NO_FILTER : filter;
+        FilteredTreeNode root = (FilteredTreeNode) getRoot();
+        if (root == null) return;
+
+        if (snapshot == null || snapshot.version != structureVersion) {
+            snapshot = new Snapshot(root, structureVersion);
+        }
+        pendingFilter = new FilterWorker(snapshot, this.filter);
+        filterExecutor.execute(pendingFilter);
+    }
+
+    /**
+     * @return  whether a {@link #filterLater(Predicate) background
+     *          filtering} is in progress
+     */
+    public boolean isFiltering() {
+        return pendingFilter != null;
+    }
+
+    /**
+     * Cancels the {@link #filterLater(Predicate) background filtering} in
+     * progress, if any, leaving the current visibility of nodes.
+     */
+    public void cancelFiltering() {
+        cancelPendingFilter();
+    }
+
+    private void cancelPendingFilter() {
+        if (pendingFilter != null) {
+            pendingFilter.cancel(false);
+            pendingFilter = null;
+        }
+    }
+
+    void applyFilter(Snapshot base, boolean[] visible) {
+        pendingFilter = null;
+        if (base.version != structureVersion) {
+            filterLater(filter);
+            return;
+        }
+
+        List<FilteredTreeNode> changed = base.apply(visible);
+        if (changed.size() > MAX_CHANGE_EVENTS) {
+            changed = Collections.singletonList(base.nodes[0]);
+        }
+        for (FilteredTreeNode node : changed) {
+            listeners.notify(TreeModelListener::treeStructureChanged,
+                             () -> new TreeModelEvent(this, node.treePath));
+        }
+    }
+
     @Override
     public Object getChild(Object parent, int index) {
         return ((FilteredTreeNode) parent).visibleChild(index);
@@ -142,6 +241,7 @@ public class FilteredTreeModel
                 ourNode.children.add(indices[i],
                         FilteredTreeNode.childOf(ourNode, source, sourceNodes[i]));
             }
+            ourNode.childrenChanged();
             scheduleFilter(ourPath);
         });
     }
@@ -155,6 +255,7 @@ public class FilteredTreeModel
             for (int i = indices.length - 1; i >= 0; i--) {
                 ourNode.children.remove(indices[i]);
             }
+            ourNode.childrenChanged();
             scheduleFilter(ourPath);
         });
     }
@@ -173,6 +274,7 @@ public class FilteredTreeModel
                                    TreeModelEvent sourceEvent,
                                    Consumer<TreePath> handler) {
         Trees.traceEvent(this, eventType, sourceEvent);
+        structureVersion++;
 
         TreePath sourcePath = sourceEvent.getTreePath();
         if (sourcePath == null) {
@@ -199,6 +301,11 @@ public class FilteredTreeModel
         if (filterBase == null) {
             filterBase = (FilteredTreeNode) path.getLastPathComponent();
             SwingUtilities.invokeLater(() -> {
+                if (pendingFilter != null) {
+                    // Starts over with the changed structure, once done
+                    filterBase = null;
+                    return;
+                }
                 try {
                     filter(filterBase);
                     listeners.notify(TreeModelListener::treeStructureChanged,
@@ -250,4 +357,131 @@ public class FilteredTreeModel
     }
 
 
+    /**
+     * The nodes of the tree in pre-order, with their parent indices.
+     */
+    static final class Snapshot {
+
+        final int version;
+        final FilteredTreeNode[] nodes;
+        final int[] parents;
+        final boolean[] leaves;
+
+        Snapshot(FilteredTreeNode root, int version) {
+            this.version = version;
+            int count = count(root);
+            nodes = new FilteredTreeNode[count];
+            parents = new int[count];
+            leaves = new boolean[count];
+            collect(root, -1, 0);
+        }
+
+        private static int count(FilteredTreeNode node) {
+            int count = 1;
+            for (FilteredTreeNode child : node.children) {
+                count += count(child);
+            }
+            return count;
+        }
+
+        /**
+         * @return  the index after the given node subtree
+         */
+        private int collect(FilteredTreeNode node, int parent, int index) {
+            nodes[index] = node;
+            parents[index] = parent;
+            leaves[index] = node.children.isEmpty();
+            int next = index + 1;
+            for (FilteredTreeNode child : node.children) {
+                next = collect(child, index, next);
+            }
+            return next;
+        }
+
+        /**
+         * @return  the new visibility of the nodes, or {@code null} if
+         *          cancelled
+         */
+        boolean[] filter(Predicate<TreePath> filter, BooleanSupplier cancelled) {
+            int count = nodes.length;
+            boolean[] visible = new boolean[count];
+            if (filter == NO_FILTER) {
+                Arrays.fill(visible, true);
+                return visible;
+            }
+            for (int i = 0; i < count; i++) {
+                if ((i & 0x3FF) == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                if (leaves[i]) {
+                    visible[i] = filter.test(nodes[i].sourcePath);
+                }
+            }
+            // Parents follow their visible descendants
+            for (int i = count - 1; i > 0; i--) {
+                if (visible[i]) visible[parents[i]] = true;
+            }
+            return visible;
+        }
+
+        /**
+         * Updates the node visibility.
+         *
+         * @return  the top-most nodes with changed visible children, being
+         *          visible, or the root, or having a visible parent
+         */
+        List<FilteredTreeNode> apply(boolean[] visible) {
+            int count = nodes.length;
+            boolean[] changed = new boolean[count];
+            for (int i = 1; i < count; i++) {
+                if (nodes[i].isVisible() != visible[i]) changed[parents[i]] = true;
+            }
+
+            List<FilteredTreeNode> changedRoots = new ArrayList<>();
+            boolean[] covered = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                int parent = parents[i];
+                covered[i] = parent >= 0 && (covered[parent] || changed[parent]);
+                if (changed[i] && !covered[i]
+                        && (i == 0 || visible[i] || visible[parent])) {
+                    changedRoots.add(nodes[i]);
+                }
+                nodes[i].setVisible(visible[i]);
+            }
+            return changedRoots;
+        }
+
+    } // class Snapshot
+
+
+    private final class FilterWorker extends SwingWorker<boolean[], Void> {
+
+        private final Snapshot base;
+        private final Predicate<TreePath> predicate;
+
+        FilterWorker(Snapshot base, Predicate<TreePath> predicate) {
+            this.base = base;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected boolean[] doInBackground() {
+            return base.filter(predicate, this::isCancelled);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || pendingFilter != this) return;
+
+            try {
+                applyFilter(base, get());
+            } catch (InterruptedException | ExecutionException e) {
+                pendingFilter = null;
+                throw new IllegalStateException(e);
+            }
+        }
+
+    } // class FilterWorker
+
+
 } // class FilteredTreeModel
@@ -23,7 +23,18 @@ class FilteredTreeNode implements FilteredTreeModel.Node {
 
     List<FilteredTreeNode> children;
 
-    boolean visible = true;
+    private boolean visible = true;
+
+    /**
+     * The visible children, or {@code null} if to be updated.
+     */
+    private FilteredTreeNode[] visibleChildren;
+
+    /**
+     * The index of this node among the visible children of its parent,
+     * as of their last update.
+     */
+    private int visibleRank = -1;
 
     private FilteredTreeNode(Object sourceNode) {
         this.treePath = new TreePath(this);
@@ -73,6 +84,14 @@ class FilteredTreeNode implements FilteredTreeModel.Node {
             children.add(childOf(this,
                     sourceModel, sourceModel.getChild(sourceNode, i)));
         }
+        childrenChanged();
+    }
+
+    /**
+     * Invalidates the visible children, after changing the children list.
+     */
+    void childrenChanged() {
+        visibleChildren = null;
     }
 
     //@Override
@@ -101,39 +120,78 @@ class FilteredTreeNode implements FilteredTreeModel.Node {
     //    return sourcePath;
     //}
 
-    void setVisiblePath(boolean visible) {
+    boolean isVisible() {
+        return visible;
+    }
+
+    void setVisible(boolean visible) {
+        if (this.visible == visible) return;
+
         this.visible = visible;
+        FilteredTreeNode parent = getParent();
+        if (parent != null) {
+            parent.visibleChildren = null;
+        }
+    }
+
+    void setVisiblePath(boolean visible) {
+        setVisible(visible);
         if (!visible) return;
 
         FilteredTreeNode parent = getParent();
         while (parent != null && !parent.visible) {
-            parent.visible = true;
+            parent.setVisible(true);
             parent = parent.getParent();
         }
     }
 
-    int visibleCount() {
-        List<FilteredTreeNode> childList = children;
-        if (childList == null) return 0;
+    /**
+     * Returns the visible children, updating them and their {@code
+     * visibleRank} after the visibility of any child, or the children list
+     * has changed.
+     */
+    private FilteredTreeNode[] visibleChildren() {
+        FilteredTreeNode[] visibleList = visibleChildren;
+        if (visibleList != null) return visibleList;
 
+        List<FilteredTreeNode> childList = children;
+        int len = (childList == null) ? 0 : childList.size();
         int count = 0;
-        for (int i = 0, len = childList.size(); i < len; i++) {
+        for (int i = 0; i < len; i++) {
             if (childList.get(i).visible) count++;
         }
-        return count;
+        visibleList = new FilteredTreeNode[count];
+        for (int i = 0, visible = 0; i < len; i++) {
+            FilteredTreeNode item = childList.get(i);
+            if (item.visible) {
+                item.visibleRank = visible;
+                visibleList[visible++] = item;
+            }
+        }
+        visibleChildren = visibleList;
+        return visibleList;
+    }
+
+    int visibleCount() {
+        return visibleChildren().length;
     }
 
     FilteredTreeNode visibleChild(int index) {
-        List<FilteredTreeNode> childList = children;
-        for (int i = 0, len = childList.size(), visible = 0; i < len; i++) {
-            FilteredTreeNode item = childList.get(i);
-            if (item.visible && index == visible++)
-                return item;
+        FilteredTreeNode[] visibleList = visibleChildren();
+        if (index < 0 || index >= visibleList.length) {
+            throw new NoSuchElementException("index " + index);
         }
-        throw new NoSuchElementException("index " + index);
+        return visibleList[index];
     }
 
     int visibleIndex(FilteredTreeNode node) {
+        if (node.visible) {
+            FilteredTreeNode[] visibleList = visibleChildren();
+            int rank = node.visibleRank;
+            return (rank >= 0 && rank < visibleList.length
+                    && visibleList[rank] == node) ? rank : -1;
+        }
+
         List<FilteredTreeNode> childList = children;
         for (int i = 0, len = childList.size(), visible = -1; i < len; i++) {
             FilteredTreeNode item = childList.get(i);
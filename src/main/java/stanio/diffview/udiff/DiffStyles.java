@@ -52,6 +52,9 @@ public class DiffStyles {
         addStyleTo(context, StyleName.DELETED_NUMBER, Color.WHITE, deletionHilite);
         addStyleTo(context, StyleName.INSERTED_LINE, null, addition);
         addStyleTo(context, StyleName.DELETED_LINE, null, deletion);
+        addStyleTo(context, StyleName.INSERTED_WORD, null, additionHilite);
+        addStyleTo(context, StyleName.DELETED_WORD, null, deletionHilite);
+        addStyleTo(context, StyleName.FILLER, null, colorOf(128, 128, 128, 0.1f));
 
         Color yellowHighlight = new Color(1f, 1f, 0, .05f);
         addStyleTo(context, StyleName.FROM_FILE, new Color(deletionHilite.getRGB()), null);
@@ -0,0 +1,351 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import stanio.diffview.udiff.ParseResult.Type;
+
+/**
+ * Per-line classification of a {@code UDiffDocument}, indexed by paragraph
+ * (line) index: line type, from-line and to-line number, and the file entry
+ * the line belongs to.
+ * <p>
+ * The values are kept in parallel primitive arrays, allocated in chunks of
+ * {@value #CHUNK_SIZE} lines, taking 9 bytes per line, instead of
+ * attribute sets on every paragraph element.  File entries start at
+ * from-file lines, and are identified by the to-file path, unless it is
+ * {@code /dev/null}, in which case the from-file path is used.  Lines
+ * preceding the first file entry belong to no entry.</p>
+ * <p>
+ * An index read from the {@code LineIndexCache} takes the line values from
+ * the mapped index file, as they are read, and just its file entries are
+ * loaded up front.  Appending it to another (empty) index shares the
+ * mapping, and further lines go to the chunks.</p>
+ * <p>
+ * The file entry start lines are kept sorted, so the entry of a given line
+ * is found by a binary search, and the entry for a given path is looked up
+ * in a hash map.</p>
+ * <p>
+ * The index is appended to by a single (parsing) thread, and may be read
+ * from any thread.  Lines become visible to other threads all at once, as
+ * a batch is appended, ahead of the corresponding document paragraphs.</p>
+ *
+ * @see  UDiffDocument#getLineIndex()
+ */
+public final class LineIndex {
+
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final Type[] TYPES = Type.values();
+
+    private byte[][] types = new byte[0][];
+    private int[][] fromLines = new int[0][];
+    private int[][] toLines = new int[0][];
+
+    /** Types, from-line, and to-line numbers of the mapped lines. */
+    private ByteBuffer mapped;
+    private int mappedSize;
+
+    private String[] filePaths = new String[16];
+    private int[] fileStarts = new int[16];
+    private final Map<String, Integer> fileEntries = new ConcurrentHashMap<>();
+
+    private volatile int size;
+    private volatile int fileCount;
+
+    LineIndex() {
+        // package-private
+    }
+
+    /**
+     * Creates an index of the given mapped lines, and no file entries.
+     *
+     * @param   lines  the line types (a byte per line), followed by the
+     *          from-line, and then the to-line numbers (an int per line)
+     * @param   lineCount  the number of lines
+     * @see     #addFile(String, int)
+     */
+    LineIndex(ByteBuffer lines, int lineCount) {
+        this.mapped = lines;
+        this.mappedSize = lineCount;
+        this.size = lineCount;
+    }
+
+    /**
+     * @return  the number of indexed lines
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param   line  line (paragraph) index
+     * @return  the line type, or {@code null} if the line is not indexed
+     */
+    public Type getType(int line) {
+        if (line < 0 || line >= size)
+            return null;
+
+        return TYPES[typeCode(line)];
+    }
+
+    /**
+     * @param   line  line (paragraph) index
+     * @return  the from-file line number, or {@code 0} if the line is not
+     *          a context or removed line
+     */
+    public int getFromLine(int line) {
+        if (line < 0 || line >= size)
+            return 0;
+
+        return fromLine(line);
+    }
+
+    /**
+     * @param   line  line (paragraph) index
+     * @return  the to-file line number, or {@code 0} if the line is not
+     *          a context or added line
+     */
+    public int getToLine(int line) {
+        if (line < 0 || line >= size)
+            return 0;
+
+        return toLine(line);
+    }
+
+    private byte typeCode(int line) {
+        if (line < mappedSize)
+            return mapped.get(line);
+
+        int i = line - mappedSize;
+        return types[i >> CHUNK_SHIFT][i & CHUNK_MASK];
+    }
+
+    private int fromLine(int line) {
+        if (line < mappedSize)
+            return mapped.getInt(mappedSize + line * Integer.BYTES);
+
+        int i = line - mappedSize;
+        return fromLines[i >> CHUNK_SHIFT][i & CHUNK_MASK];
+    }
+
+    private int toLine(int line) {
+        if (line < mappedSize)
+            return mapped.getInt(mappedSize * (1 + Integer.BYTES)
+                                 + line * Integer.BYTES);
+
+        int i = line - mappedSize;
+        return toLines[i >> CHUNK_SHIFT][i & CHUNK_MASK];
+    }
+
+    /**
+     * @param   line  line (paragraph) index
+     * @return  the index of the file entry the line belongs to, or
+     *          {@code -1} if none, or the line is not indexed
+     */
+    public int getFileIndex(int line) {
+        if (line < 0 || line >= size)
+            return -1;
+
+        int high = fileCount - 1;
+        int[] starts = fileStarts;
+        int low = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= line) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return  the number of file entries
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @param   entry  file entry index
+     * @return  the file path of the given entry, or {@code null} if both
+     *          the from-file and to-file are {@code /dev/null}
+     */
+    public String getFile(int entry) {
+        checkEntry(entry);
+        return filePaths[entry];
+    }
+
+    /**
+     * @param   entry  file entry index
+     * @return  the line (paragraph) index of the from-file line starting
+     *          the given entry
+     */
+    public int getFileLine(int entry) {
+        checkEntry(entry);
+        return fileStarts[entry];
+    }
+
+    /**
+     * @param   path  file path
+     * @return  the index of the first file entry with the given path, or
+     *          {@code -1} if there is none
+     */
+    public int indexOfFile(String path) {
+        Integer entry = fileEntries.get(path);
+        return (entry == null) ? -1 : entry;
+    }
+
+    private void checkEntry(int entry) {
+        if (entry < 0 || entry >= fileCount)
+            throw new IndexOutOfBoundsException("File entry: " + entry
+                                                + ", count: " + fileCount);
+    }
+
+    /**
+     * Starts a new file entry at the next line to be added.
+     *
+     * @param   path  the from-file path, or {@code null}
+     */
+    void addFile(String path) {
+        addFile(path, size);
+    }
+
+    /**
+     * Starts a new file entry at the given line.
+     *
+     * @param   path  the file path, or {@code null}
+     * @param   startLine  the entry start line, not preceding the last
+     *          entry start
+     */
+    void addFile(String path, int startLine) {
+        int count = fileCount;
+        if (count == filePaths.length) {
+            filePaths = Arrays.copyOf(filePaths, count * 2);
+            fileStarts = Arrays.copyOf(fileStarts, count * 2);
+        }
+        filePaths[count] = path;
+        fileStarts[count] = startLine;
+        if (path != null) {
+            fileEntries.putIfAbsent(path, count);
+        }
+        fileCount = count + 1;
+    }
+
+    /**
+     * Replaces the path of the last file entry.  Ignored if there are no
+     * file entries.
+     *
+     * @param   path  the to-file path
+     */
+    void setFile(String path) {
+        int count = fileCount;
+        if (count == 0) return;
+
+        String oldPath = filePaths[count - 1];
+        if (oldPath != null) {
+            fileEntries.remove(oldPath, count - 1);
+        }
+        filePaths[count - 1] = path;
+        fileEntries.putIfAbsent(path, count - 1);
+        fileCount = count; // publish
+    }
+
+    /**
+     * Adds a line belonging to the last file entry.
+     *
+     * @param   type  the line type
+     * @param   fromLine  the from-file line number, or {@code 0}
+     * @param   toLine  the to-file line number, or {@code 0}
+     */
+    void add(Type type, int fromLine, int toLine) {
+        int line = size;
+        int k = line - mappedSize;
+        ensureCapacity(k + 1);
+        int chunk = k >> CHUNK_SHIFT;
+        int i = k & CHUNK_MASK;
+        types[chunk][i] = (byte) type.ordinal();
+        fromLines[chunk][i] = fromLine;
+        toLines[chunk][i] = toLine;
+        size = line + 1;
+    }
+
+    /**
+     * Appends the lines and file entries of the given index.  Lines of
+     * <var>batch</var> preceding its first file entry become part of the
+     * last file entry of this index.  Mapped lines of <var>batch</var>
+     * appended to an empty index are not copied, but shared.
+     *
+     * @param   batch  the index to append
+     */
+    void addAll(LineIndex batch) {
+        int base = size;
+        int batchSize = batch.size;
+        int batchFiles = batch.fileCount;
+        int shared = 0;
+        if (base == 0 && batch.mappedSize > 0) {
+            mapped = batch.mapped;
+            mappedSize = shared = batch.mappedSize;
+        }
+        ensureCapacity(base + batchSize - mappedSize);
+        for (int k = 0; k < batchFiles; k++) {
+            addFile(batch.filePaths[k], base + batch.fileStarts[k]);
+        }
+
+        for (int k = shared; k < batchSize; k++) {
+            int line = base + k - mappedSize;
+            int chunk = line >> CHUNK_SHIFT;
+            int i = line & CHUNK_MASK;
+            types[chunk][i] = batch.typeCode(k);
+            fromLines[chunk][i] = batch.fromLine(k);
+            toLines[chunk][i] = batch.toLine(k);
+        }
+        size = base + batchSize;
+    }
+
+    /**
+     * Removes all lines and file entries, keeping the allocated chunks.
+     */
+    void clear() {
+        Arrays.fill(filePaths, 0, fileCount, null);
+        fileEntries.clear();
+        fileCount = 0;
+        size = 0;
+        mapped = null;
+        mappedSize = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int chunkCount = (capacity + CHUNK_MASK) >> CHUNK_SHIFT;
+        int current = types.length;
+        if (chunkCount <= current) return;
+
+        byte[][] types = Arrays.copyOf(this.types, chunkCount);
+        int[][] fromLines = Arrays.copyOf(this.fromLines, chunkCount);
+        int[][] toLines = Arrays.copyOf(this.toLines, chunkCount);
+        for (int i = current; i < chunkCount; i++) {
+            types[i] = new byte[CHUNK_SIZE];
+            fromLines[i] = new int[CHUNK_SIZE];
+            toLines[i] = new int[CHUNK_SIZE];
+        }
+        this.types = types;
+        this.fromLines = fromLines;
+        this.toLines = toLines;
+    }
+
+    @Override
+    public String toString() {
+        return "LineIndex(size: " + size + ", files: " + fileCount + ")";
+    }
+
+}
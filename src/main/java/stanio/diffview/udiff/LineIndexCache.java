@@ -0,0 +1,264 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Persists the {@code LineIndex} of diff files in a user cache directory,
+ * so reopening a large file doesn't parse it again.
+ * <p>
+ * The index file of a diff file is named after a hash of its absolute path,
+ * and records the diff file size, last-modified time, and a content hash
+ * (of its size, and its first and last {@value #HASH_SAMPLE} bytes).  An
+ * index not matching the current file is stale, and is not used.  The
+ * index file holds the line types, from-line and to-line numbers, and the
+ * file entry start lines and paths, and is memory-mapped when read.  Just
+ * the file entries are read up front &ndash; the line values are read from
+ * the mapping as they are accessed.</p>
+ * <p>
+ * Only files of at least {@value #MIN_FILE_SIZE} bytes are indexed.  The
+ * cache directory is {@code diff-view/index} in the platform user cache
+ * directory, or the one given by the {@value #CACHE_DIR_PROPERTY} system
+ * property.</p>
+ *
+ * @see  UDiffEditorKit#INDEX_PROPERTY
+ */
+public final class LineIndexCache {
+
+    static final String CACHE_DIR_PROPERTY = "stanio.diffview.cacheDir";
+
+    static final long MIN_FILE_SIZE = 1024 * 1024;
+
+    static final int HASH_SAMPLE = 64 * 1024;
+
+    private static final int MAGIC = 0x44564958; // "DVIX"
+
+    private static final int VERSION = 1;
+
+    private static final int HASH_LENGTH = 32;
+
+    private LineIndexCache() {}
+
+    /**
+     * @param   file  a diff file
+     * @return  the cached line index of the given file, or {@code null}
+     *          if there is none, or it is stale
+     */
+    public static LineIndex read(Path file) {
+        try {
+            long size = Files.size(file);
+            if (size < MIN_FILE_SIZE) return null;
+
+            Path indexFile = indexFile(file);
+            if (!Files.isRegularFile(indexFile)) return null;
+
+            return read(indexFile, size, Files.getLastModifiedTime(file).toMillis(),
+                        contentHash(file, size));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not read line index of " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static LineIndex read(Path indexFile, long size,
+                                  long lastModified, byte[] contentHash)
+            throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buf.getInt() != MAGIC
+                || buf.getInt() != VERSION
+                || buf.getLong() != size
+                || buf.getLong() != lastModified) {
+            return null; // stale
+        }
+        byte[] hash = new byte[HASH_LENGTH];
+        buf.get(hash);
+        if (!Arrays.equals(hash, contentHash)) {
+            return null; // stale
+        }
+
+        int lineCount = buf.getInt();
+        int fileCount = buf.getInt();
+        int lineLength = 1 + 2 * Integer.BYTES;
+        if (lineCount < 0 || fileCount < 0
+                || lineCount > buf.remaining() / lineLength) {
+            throw new IOException("Corrupt index file: " + indexFile);
+        }
+        int linesLength = lineCount * lineLength;
+
+        LineIndex index = new LineIndex(buf.slice(), lineCount);
+        buf.position(buf.position() + linesLength);
+        int lastEntryLine = 0;
+        for (int i = 0; i < fileCount; i++) {
+            int entryLine = buf.getInt();
+            if (entryLine < lastEntryLine || entryLine > lineCount) {
+                throw new IOException("Corrupt index file: " + indexFile);
+            }
+            index.addFile(readPath(buf), entryLine);
+            lastEntryLine = entryLine;
+        }
+        return index;
+    }
+
+    private static String readPath(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stores the line index of the given diff file, if large enough.  The
+     * index should have been built from the current file content.
+     *
+     * @param   file  a diff file
+     * @param   index  the line index of the file
+     */
+    public static void write(Path file, LineIndex index) {
+        try {
+            long size = Files.size(file);
+            if (size < MIN_FILE_SIZE
+                    || index.size() > (Integer.MAX_VALUE - 1024) / 9) return;
+
+            write(indexFile(file), index, size,
+                  Files.getLastModifiedTime(file).toMillis(),
+                  contentHash(file, size));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write line index of " + file + ": " + e);
+        }
+    }
+
+    private static void write(Path indexFile, LineIndex index, long size,
+                              long lastModified, byte[] contentHash)
+            throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path tempFile = Files.createTempFile(indexFile.getParent(),
+                indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(tempFile), 64 * 1024))) {
+                int lineCount = index.size();
+                int fileCount = index.getFileCount();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.write(contentHash);
+                out.writeInt(lineCount);
+                out.writeInt(fileCount);
+                for (int i = 0; i < lineCount; i++) {
+                    out.writeByte(index.getType(i).ordinal());
+                }
+                for (int i = 0; i < lineCount; i++) {
+                    out.writeInt(index.getFromLine(i));
+                }
+                for (int i = 0; i < lineCount; i++) {
+                    out.writeInt(index.getToLine(i));
+                }
+                for (int i = 0; i < fileCount; i++) {
+                    out.writeInt(index.getFileLine(i));
+                    String path = index.getFile(i);
+                    if (path == null) {
+                        out.writeInt(-1);
+                    } else {
+                        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                                            StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    static Path indexFile(Path file) throws IOException {
+        byte[] pathHash = sha256().digest(file.toAbsolutePath().normalize()
+                .toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(HASH_LENGTH * 2 + 4);
+        for (byte b : pathHash) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        }
+        return cacheDirectory().resolve(name.append(".idx").toString());
+    }
+
+    private static byte[] contentHash(Path file, long size) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(size).flip());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer sample = ByteBuffer.allocate(HASH_SAMPLE);
+            readFully(channel, sample, 0);
+            digest.update(sample.flip());
+            sample.clear();
+            readFully(channel, sample, Math.max(0, size - HASH_SAMPLE));
+            digest.update(sample.flip());
+        }
+        return digest.digest();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position)
+            throws IOException {
+        long pos = position;
+        int count;
+        while (buf.hasRemaining() && (count = channel.read(buf, pos)) >= 0) {
+            pos += count;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Path cacheDirectory() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+
+        Path userHome = Paths.get(System.getProperty("user.home"));
+        String os = System.getProperty("os.name", "").toLowerCase();
+        Path cacheHome;
+        if (os.startsWith("windows")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            cacheHome = (localAppData != null) ? Paths.get(localAppData)
+                                               : userHome.resolve("AppData/Local");
+        } else if (os.startsWith("mac")) {
+            cacheHome = userHome.resolve("Library/Caches");
+        } else {
+            String xdgCache = System.getenv("XDG_CACHE_HOME");
+            cacheHome = (xdgCache != null) ? Paths.get(xdgCache)
+                                           : userHome.resolve(".cache");
+        }
+        return cacheHome.resolve("diff-view").resolve("index");
+    }
+
+}
@@ -6,11 +6,18 @@ package stanio.diffview.udiff;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 
 /**
  * Unlike {@code java.io.BufferedReader} this returns the newline character(s)
  * as part of the line.
+ * <p>
+ * Lines could be read as new strings, using {@code nextLine()}, or without
+ * copying, using {@code next()}, and then accessing the current line in
+ * the internal buffer: {@code line()} gives a reusable view of it, and
+ * {@code buffer()}, {@code lineStart()}, and {@code lineEnd()} &ndash; its
+ * bounds.  The buffer grows geometrically to fit long lines.</p>
  */
 class LineReader {
 
@@ -20,28 +27,43 @@ class LineReader {
 
     private char[] buffer;
 
+    private CharBuffer view;
+
     private int pos;
 
     private int end;
 
+    private int lineStart;
+
+    private int lineEnd;
+
     LineReader(Reader in) {
         this.in = in;
         this.buffer = new char[16 * 1024];
+        this.view = CharBuffer.wrap(buffer);
     }
 
-    private void readMore() throws IOException {
-        if (eof) return;
-
-        if (pos > 0 && pos < end) {
+    /**
+     * Compacts the buffer, or expands it when full, and reads more input.
+     *
+     * @return  the number of chars the buffer content has been shifted
+     *          to the start
+     */
+    private int readMore() throws IOException {
+        if (eof) return 0;
+
+        int shift = pos;
+        if (pos > 0) {
             //System.err.println("Move: " + (end - pos));
             System.arraycopy(buffer, pos, buffer, 0, end - pos);
             end -= pos;
             pos = 0;
         }
 
-        if (buffer.length < end + 1024) { // Expand buffer (just a little bit)
-            //System.err.println("Expand: " + (buffer.length + 1024));
-            buffer = Arrays.copyOf(buffer, buffer.length + 1024);
+        if (buffer.length < end + 1024) {
+            //System.err.println("Expand: " + (buffer.length * 2));
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            view = CharBuffer.wrap(buffer);
         }
 
         int count = in.read(buffer, end, buffer.length - end);
@@ -51,35 +73,82 @@ class LineReader {
         } else {
             end += count;
         }
+        return shift;
     }
 
-    String nextLine() throws IOException {
-        if (eof) return null;
+    /**
+     * Advances to the next line.  The last line of the input has no
+     * terminating {@code '\n'} &ndash; it is empty if the input ends with
+     * a newline.
+     *
+     * @return  {@code false} if there are no more lines
+     * @throws  IOException  if an I/O error occurs
+     */
+    boolean next() throws IOException {
+        if (eof) return false;
 
         int eol = -1;
-        char[] buf = buffer;
+        int scan = pos;
 
     line_end:
         while (!eof) {
-            for (int i = pos, e = end; i < e; i++) {
+            char[] buf = buffer;
+            for (int i = scan, e = end; i < e; i++) {
                 if (buf[i] == '\n') {
                     eol = i + 1;
                     break line_end;
                 }
             }
-            readMore();
-            buf = buffer;
+            int scanned = end;
+            scan = scanned - readMore();
         }
 
         if (eol < 0) {
             eol = end;
         }
+        lineStart = pos;
+        lineEnd = eol;
+        pos = eol;
+        return true;
+    }
 
-        try {
-            return new String(buf, pos, eol - pos);
-        } finally {
-            pos = eol;
-        }
+    /**
+     * @return  the buffer holding the current line, valid until the next
+     *          call to {@code next()} or {@code nextLine()}
+     * @see     #lineStart()
+     * @see     #lineEnd()
+     */
+    char[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return  the start of the current line in the buffer
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return  the end of the current line in the buffer, including any
+     *          terminating {@code '\n'}
+     */
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return  a view of the current line, reused for the following lines
+     */
+    CharBuffer line() {
+        view.limit(lineEnd);
+        view.position(lineStart);
+        return view;
+    }
+
+    String nextLine() throws IOException {
+        return next() ? new String(buffer, lineStart, lineEnd - lineStart)
+                      : null;
     }
 
 }
@@ -0,0 +1,250 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.swing.text.BadLocationException;
+
+/**
+ * Classifies the lines of a large patch in parallel.
+ * <p>
+ * The text is read in segments of whole file entries, split at lines
+ * starting with {@code "diff "} or {@code "Index: "}, as these generally
+ * restart the parser state.  Every segment is classified using its own
+ * parser and {@code UDiffBuilder}, in the common {@code ForkJoinPool}, and
+ * the results are appended to the document in order, as soon as available.
+ * At most a few more segments than the pool parallelism are read ahead,
+ * and a segment is released once appended, so memory stays bounded and
+ * the document grows progressively for slow inputs.</p>
+ * <p>
+ * Before appending a segment, its first line is classified once more from
+ * the state the sequential parse would have at that point (the final state
+ * of the previous segment).  If the resulting parser state differs from the
+ * one the segment has been classified with, the segment is classified again,
+ * sequentially, so the result is always the same as of a sequential
+ * parse.  (The term bounds of a first line, being a {@code DIFF_CMD},
+ * {@code INDEX}, or {@code MESSAGE} line, don't contribute to the document
+ * attributes.)</p>
+ *
+ * @see  UDiffEditorKit#parse(java.io.Reader, UDiffDocument)
+ */
+final class ParallelParser {
+
+    static final int SEGMENT_LENGTH = 512 * 1024;
+
+    private final UDiffDocument document;
+
+    private final int segmentLength;
+
+    private final int maxPending;
+
+    ParallelParser(UDiffDocument document) {
+        this(document, 0);
+    }
+
+    /**
+     * @param   segmentLength  minimum segment length, or {@code 0} for
+     *          the default {@value #SEGMENT_LENGTH}
+     */
+    ParallelParser(UDiffDocument document, int segmentLength) {
+        this.document = document;
+        this.segmentLength = (segmentLength > 0) ? segmentLength
+                                                 : SEGMENT_LENGTH;
+        this.maxPending = ForkJoinPool.getCommonPoolParallelism() + 1;
+    }
+
+    static boolean isFileStart(char[] text, int start, int end) {
+        return startsWith(text, start, end, "diff ")
+                || startsWith(text, start, end, "Index: ");
+    }
+
+    private static boolean startsWith(char[] text, int start, int end,
+                                      String prefix) {
+        int len = prefix.length();
+        if (end - start < len)
+            return false;
+
+        for (int i = 0; i < len; i++) {
+            if (text[start + i] != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Classifies the current line of the given reader, and all the
+     * remaining lines, and appends them to the document.
+     *
+     * @param   lines  the reader positioned at the first line to parse
+     * @param   state  the parser state at the start of the text
+     * @return  the parser state at the end of the text
+     * @throws  IOException  if an I/O error occurs
+     * @throws  BadLocationException  if appending to the document fails
+     * @throws  InterruptedIOException  if the current thread is interrupted
+     *          while waiting for the parallel tasks
+     */
+    UDiffParser parse(LineReader lines, UDiffParser state)
+            throws IOException, BadLocationException {
+        Deque<ForkJoinTask<Segment>> tasks = new ArrayDeque<>(maxPending + 1);
+        UDiffParser carried = state;
+        try {
+            char[] text = new char[initialCapacity()];
+            int length = 0;
+            do {
+                char[] buf = lines.buffer();
+                int start = lines.lineStart();
+                int end = lines.lineEnd();
+                if (length >= segmentLength && isFileStart(buf, start, end)) {
+                    tasks.add(submit(new Segment(text, length)));
+                    carried = appendDone(tasks, carried, maxPending);
+                    text = new char[initialCapacity()];
+                    length = 0;
+                }
+                int lineLength = end - start;
+                if (text.length - length < lineLength) {
+                    text = Arrays.copyOf(text, Math.max(text.length * 2,
+                                                        length + lineLength));
+                }
+                System.arraycopy(buf, start, text, length, lineLength);
+                length += lineLength;
+            } while (lines.next());
+
+            if (length > 0) {
+                tasks.add(submit(new Segment(text, length)));
+            }
+            carried = appendDone(tasks, carried, 0);
+        } catch (InterruptedException e) {
+            InterruptedIOException ex = new InterruptedIOException();
+            ex.initCause(e);
+            throw ex;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BadLocationException) {
+                throw (BadLocationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+        return carried;
+    }
+
+    private int initialCapacity() {
+        return Math.max(1024, segmentLength + segmentLength / 8);
+    }
+
+    private static ForkJoinTask<Segment> submit(Segment item) {
+        return ForkJoinPool.commonPool().submit(() -> {
+            item.classify();
+            return item;
+        });
+    }
+
+    /**
+     * Appends the leading segments already classified, waiting for them
+     * while more than the given number are pending.
+     */
+    private static UDiffParser appendDone(Deque<ForkJoinTask<Segment>> tasks,
+                                          UDiffParser state,
+                                          int maxPending)
+            throws BadLocationException,
+                   InterruptedException, ExecutionException {
+        UDiffParser carried = state;
+        while (!tasks.isEmpty()
+                && (tasks.size() > maxPending || tasks.peek().isDone())) {
+            Segment item = tasks.peek().get();
+            tasks.poll();
+            if (!item.continues(carried)) {
+                item.reclassify(carried);
+            }
+            item.builder.finish(item.tail);
+            carried = item.parser;
+        }
+        return carried;
+    }
+
+
+    private final class Segment {
+
+        /** The segment text, from index 0. */
+        private final char[] text;
+        private final int end;
+
+        UDiffParser parser;
+        UDiffBuilder builder;
+
+        /** The parser state after the first line. */
+        private UDiffParser firstLine;
+
+        String tail;
+
+        Segment(char[] text, int length) {
+            this.text = text;
+            this.end = length;
+            // Resolves the document styles in the calling thread
+            this.parser = new UDiffParser();
+            this.builder = new UDiffBuilder(document, parser, 0);
+        }
+
+        void classify() throws BadLocationException {
+            int lineStart = 0;
+            for (int i = 0; i < end; i++) {
+                if (text[i] != '\n') continue;
+
+                builder.addLine(text, lineStart, i + 1 - lineStart);
+                if (firstLine == null) {
+                    firstLine = new UDiffParser(parser);
+                }
+                lineStart = i + 1;
+            }
+            if (lineStart < end) {
+                tail = new String(text, lineStart, end - lineStart);
+            }
+        }
+
+        boolean continues(UDiffParser state) {
+            int eol = lineEnd(0);
+            if (eol < 0) {
+                return true; // Only a tail, not classified
+            }
+            UDiffParser check = new UDiffParser(state);
+            check.update(CharBuffer.wrap(text, 0, eol));
+            return check.sameState(firstLine);
+        }
+
+        void reclassify(UDiffParser state) throws BadLocationException {
+            parser = new UDiffParser(state);
+            builder = new UDiffBuilder(document, parser, UDiffBuilder.BATCH_LINES);
+            firstLine = null;
+            tail = null;
+            classify();
+        }
+
+        private int lineEnd(int from) {
+            for (int i = from; i < end; i++) {
+                if (text[i] == '\n') return i + 1;
+            }
+            return -1;
+        }
+
+    } // class Segment
+
+
+} // class ParallelParser
@@ -0,0 +1,235 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.Style;
+import javax.swing.text.StyleContext;
+
+import stanio.diffview.udiff.ParseResult.Type;
+import stanio.diffview.udiff.UDiffDocument.StyleName;
+
+/**
+ * Old-side (left) and new-side (right) documents for a side-by-side view
+ * of a range of lines of a {@code UDiffDocument}, usually a file entry.
+ * <p>
+ * Context lines show on both sides, removed lines on the left, and added
+ * lines on the right, without the diff line markers.  A run of removed lines
+ * is shown next to the following run of added lines, and the shorter side is
+ * padded with filler lines, so both documents have the same number of lines
+ * and the corresponding lines align.  Other lines (headers, hunk headers,
+ * messages) show as they are, on both sides.</p>
+ * <p>
+ * Both documents have their own {@code LineIndex}: the left one has just
+ * the from-line numbers, and the right one &ndash; just the to-line numbers.
+ * Filler lines are indexed as {@code MESSAGE} lines.</p>
+ */
+public final class SplitDiff {
+
+    private static final char[] NEWLINE = { '\n' };
+
+    private final UDiffDocument left;
+
+    private final UDiffDocument right;
+
+    private SplitDiff(UDiffDocument left, UDiffDocument right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public UDiffDocument getLeft() {
+        return left;
+    }
+
+    public UDiffDocument getRight() {
+        return right;
+    }
+
+    /**
+     * Builds the side documents for the given range of lines.  May be
+     * invoked in a background thread &ndash; the source document is read
+     * under its read lock.
+     *
+     * @param   source  the unified diff document
+     * @param   fromLine  first line (paragraph) index
+     * @param   toLine  end line index (exclusive)
+     * @return  the left and right documents
+     * @throws  BadLocationException  if building the documents fails
+     */
+    public static SplitDiff build(UDiffDocument source, int fromLine, int toLine)
+            throws BadLocationException {
+        LineIndex lines = source.getLineIndex();
+        int[] lineStarts = new int[Math.max(0, toLine - fromLine) + 1];
+        int[] available = new int[1];
+        char[][] text = new char[1][];
+        BadLocationException[] error = new BadLocationException[1];
+        source.render(() -> {
+            // The line index may be ahead of the document paragraphs
+            Element root = source.getDefaultRootElement();
+            int end = Math.min(Math.min(toLine, lines.size()),
+                               root.getElementCount() - 1);
+            if (end <= fromLine) return;
+
+            int start = root.getElement(fromLine).getStartOffset();
+            for (int i = fromLine; i <= end; i++) {
+                lineStarts[i - fromLine] = root.getElement(i).getStartOffset() - start;
+            }
+            try {
+                text[0] = source.getText(start, lineStarts[end - fromLine])
+                                .toCharArray();
+                available[0] = end;
+            } catch (BadLocationException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        int endLine = Math.max(fromLine, available[0]);
+
+        UDiffDocument left = new UDiffDocument(source.getStyleContext());
+        UDiffDocument right = new UDiffDocument(source.getStyleContext());
+        if (endLine == fromLine) {
+            return new SplitDiff(left, right);
+        }
+
+        Side leftSide = new Side(left, text[0]);
+        Side rightSide = new Side(right, text[0]);
+        int fileEntry = (fromLine > 0) ? lines.getFileIndex(fromLine - 1) : -1;
+        int lineNo = fromLine;
+        while (lineNo < endLine) {
+            int entry = lines.getFileIndex(lineNo);
+            if (entry != fileEntry) {
+                fileEntry = entry;
+                leftSide.index.addFile(lines.getFile(entry));
+                rightSide.index.addFile(lines.getFile(entry));
+            }
+
+            Type lineType = lines.getType(lineNo);
+            int start = lineStarts[lineNo - fromLine];
+            int end = lineStarts[lineNo - fromLine + 1];
+            if (lineType == Type.CONTEXT) {
+                leftSide.add(lineType, start + 1, end, lines.getFromLine(lineNo), 0);
+                rightSide.add(lineType, start + 1, end, 0, lines.getToLine(lineNo));
+                lineNo++;
+            } else if (lineType == Type.REMOVED || lineType == Type.ADDED) {
+                int removed = lineNo;
+                while (lineNo < endLine && lines.getType(lineNo) == Type.REMOVED) lineNo++;
+                int added = lineNo;
+                while (lineNo < endLine && lines.getType(lineNo) == Type.ADDED) lineNo++;
+                int removedCount = added - removed;
+                int addedCount = lineNo - added;
+                for (int i = 0; i < Math.max(removedCount, addedCount); i++) {
+                    if (i < removedCount) {
+                        int k = removed + i - fromLine;
+                        leftSide.add(Type.REMOVED, lineStarts[k] + 1, lineStarts[k + 1],
+                                     lines.getFromLine(removed + i), 0);
+                    } else {
+                        leftSide.addFiller();
+                    }
+                    if (i < addedCount) {
+                        int k = added + i - fromLine;
+                        rightSide.add(Type.ADDED, lineStarts[k] + 1, lineStarts[k + 1],
+                                      0, lines.getToLine(added + i));
+                    } else {
+                        rightSide.addFiller();
+                    }
+                }
+            } else {
+                leftSide.add(lineType, start, end, 0, 0);
+                rightSide.add(lineType, start, end, 0, 0);
+                lineNo++;
+            }
+        }
+        leftSide.finish();
+        rightSide.finish();
+        return new SplitDiff(left, right);
+    }
+
+
+    private static class Side {
+
+        final UDiffDocument document;
+
+        final LineIndex index = new LineIndex();
+
+        private final char[] text;
+
+        private final List<ElementSpec> specs = new ArrayList<>();
+
+        private final Map<Type, AttributeSet> lineAttributes;
+
+        private final AttributeSet hunkLabel;
+
+        private final AttributeSet fillerAttributes;
+
+        Side(UDiffDocument document, char[] text) {
+            this.document = document;
+            this.text = text;
+            this.lineAttributes = UDiffBuilder.lineAttributes(document);
+            this.hunkLabel = UDiffBuilder.hunkLabelAttributes(document);
+
+            Style filler = document.getStyle(StyleName.FILLER);
+            if (filler == null) filler = document.getStyle(StyleContext.DEFAULT_STYLE);
+            SimpleAttributeSet attrs = new SimpleAttributeSet();
+            attrs.setResolveParent(filler);
+            this.fillerAttributes = attrs;
+        }
+
+        void add(Type lineType, int start, int end, int fromLine, int toLine) {
+            index.add(lineType, fromLine, toLine);
+            specs.add(new ElementSpec(lineAttributes.get(lineType),
+                                      ElementSpec.StartTagType));
+            int labelStart = (lineType == Type.HUNK) ? hunkEnd(start, end) : -1;
+            if (labelStart > 0 && labelStart < end) {
+                specs.add(UDiffBuilder.content(SimpleAttributeSet.EMPTY,
+                                               text, start, labelStart - start));
+                specs.add(UDiffBuilder.content(hunkLabel,
+                                               text, labelStart, end - labelStart));
+            } else {
+                specs.add(UDiffBuilder.content(SimpleAttributeSet.EMPTY,
+                                               text, start, end - start));
+            }
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+
+        void addFiller() {
+            index.add(Type.MESSAGE, 0, 0);
+            specs.add(new ElementSpec(fillerAttributes, ElementSpec.StartTagType));
+            specs.add(new ElementSpec(SimpleAttributeSet.EMPTY,
+                    ElementSpec.ContentType, NEWLINE, 0, 1));
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+
+        /**
+         * @return  the end of the {@code "@@ ... @@"} hunk header, or
+         *          {@code -1} if not found
+         */
+        private int hunkEnd(int start, int end) {
+            for (int i = start + 2; i < end - 1; i++) {
+                if (text[i] == '@' && text[i + 1] == '@') {
+                    return i + 2;
+                }
+            }
+            return -1;
+        }
+
+        void finish() throws BadLocationException {
+            document.appendLines(specs.toArray(new ElementSpec[specs.size()]), index);
+            specs.clear();
+        }
+
+    } // class Side
+
+
+} // class SplitDiff
@@ -0,0 +1,337 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static stanio.diffview.udiff.UDiffEditorKit.udiffStyles;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.Style;
+import javax.swing.text.StyleContext;
+
+import stanio.diffview.udiff.ParseResult.Type;
+import stanio.diffview.udiff.UDiffDocument.StyleName;
+
+/**
+ * Builds a {@code UDiffDocument} from whole lines of text, in batches.
+ * <p>
+ * Every line is classified as it is added, and its paragraph (logical
+ * style) is prepared up front, as {@code ElementSpec}s, while its type, line
+ * numbers, and file entry go to a {@code LineIndex}.  The pending lines are
+ * appended to the document in a single structural change, once there are
+ * enough of them, instead of inserting text and then updating the element
+ * attributes line by line.  Paragraphs of the same line type share a single
+ * attribute set.</p>
+ * <p>
+ * The first {@value #FIRST_BATCH_LINES} lines are appended right away, so
+ * the first screen shows up fast.  Following batches are appended when
+ * reaching the batch size, or after {@value #FLUSH_INTERVAL_MILLIS} ms
+ * have passed since the last batch, whichever comes first.</p>
+ * <p>
+ * Given a (cached) index of the lines to add, the line classification is
+ * taken from it, and the parser is not used, until the index is
+ * exhausted.  The given index goes to the document as a whole, with the
+ * first batch, so all of its file entries are there from the start.</p>
+ *
+ * @see  #replay(LineIndex)
+ * @see  UDiffDocument#appendLines(ElementSpec[], LineIndex)
+ */
+final class UDiffBuilder {
+
+    static final int BATCH_LINES = 64 * 1024;
+
+    static final int FIRST_BATCH_LINES = 500;
+
+    static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    private final UDiffDocument document;
+
+    private final UDiffParser parser;
+
+    private final int batchLines;
+
+    private final Map<Type, AttributeSet> lineAttributes = new EnumMap<>(Type.class);
+
+    private final AttributeSet hunkLabel;
+
+    private char[] text = new char[64 * 1024];
+
+    private int textLength;
+
+    private CharBuffer textView = CharBuffer.wrap(text);
+
+    private final List<ElementSpec> specs = new ArrayList<>();
+
+    private final LineIndex lines = new LineIndex();
+
+    private LineIndex replay;
+
+    private int replayLine;
+
+    private int lineCount;
+
+    private int batchLimit;
+
+    private long lastFlush = System.nanoTime();
+
+    UDiffBuilder(UDiffDocument document, UDiffParser parser) {
+        this(document, parser, BATCH_LINES);
+    }
+
+    /**
+     * @param   batchLines  maximum number of lines to append at once, or
+     *          {@code 0} to append only on explicit {@code flush()}
+     */
+    UDiffBuilder(UDiffDocument document, UDiffParser parser, int batchLines) {
+        this.document = document;
+        this.parser = parser;
+        this.batchLines = batchLines;
+        this.batchLimit = Math.min(batchLines, FIRST_BATCH_LINES);
+
+        lineAttributes.putAll(lineAttributes(document));
+        hunkLabel = hunkLabelAttributes(document);
+    }
+
+    /**
+     * @return  paragraph attributes for every line type, resolving to the
+     *          style for the line type of the given document
+     */
+    static Map<Type, AttributeSet> lineAttributes(UDiffDocument document) {
+        Map<Type, AttributeSet> lineAttributes = new EnumMap<>(Type.class);
+        Style defaultStyle = document.getStyle(StyleContext.DEFAULT_STYLE);
+        for (Type type : Type.values()) {
+            String name = udiffStyles.get(type);
+            Style style = (name == null) ? null : document.getStyle(name);
+            if (style == null) style = defaultStyle;
+
+            SimpleAttributeSet attrs = new SimpleAttributeSet();
+            attrs.setResolveParent(style);
+            lineAttributes.put(type, attrs);
+        }
+        return lineAttributes;
+    }
+
+    static AttributeSet hunkLabelAttributes(UDiffDocument document) {
+        Style label = document.getStyle(StyleName.HUNK_LABEL);
+        return (label == null) ? SimpleAttributeSet.EMPTY
+                               : label.copyAttributes();
+    }
+
+    /**
+     * Sets an index of the lines to be added, to take their classification
+     * from, instead of parsing them.  Should be set before adding any
+     * lines.
+     *
+     * @param   index  line index of a previous parsing of the same input
+     */
+    void replay(LineIndex index) {
+        this.replay = index;
+        this.replayLine = 0;
+        lines.clear();
+        lines.addAll(index);
+    }
+
+    /**
+     * Adds a complete line, including the terminating {@code '\n'}.
+     *
+     * @param   line  the line text
+     * @throws  BadLocationException  if appending a batch of lines to
+     *          the document fails
+     */
+    void addLine(CharSequence line) throws BadLocationException {
+        int start = textLength;
+        int length = line.length();
+        ensureCapacity(start + length);
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, text, start);
+        } else {
+            for (int i = 0; i < length; i++) {
+                text[start + i] = line.charAt(i);
+            }
+        }
+        textLength += length;
+        lineAdded(start, length);
+    }
+
+    /**
+     * Adds a complete line, including the terminating {@code '\n'}.
+     *
+     * @param   buf  source buffer
+     * @param   offset  the line start in <var>buf</var>
+     * @param   length  the line length
+     * @throws  BadLocationException  if appending a batch of lines to
+     *          the document fails
+     */
+    void addLine(char[] buf, int offset, int length) throws BadLocationException {
+        int start = textLength;
+        ensureCapacity(start + length);
+        System.arraycopy(buf, offset, text, start, length);
+        textLength += length;
+        lineAdded(start, length);
+    }
+
+    private void lineAdded(int start, int length) throws BadLocationException {
+        Type lineType;
+        if (replay != null && replayLine < replay.size()) {
+            lineType = replayLine(start, length);
+        } else {
+            textView.limit(start + length);
+            textView.position(start);
+            parser.update(textView);
+            lineType = parser.getType();
+            addSpecs(start, length);
+        }
+
+        lineCount++;
+        if (batchLines > 0
+                && lineType != Type.FROM_FILE
+                && (lineCount >= batchLimit
+                    || lineCount % 256 == 0 && flushDue())) {
+            flush();
+        }
+    }
+
+    private boolean flushDue() {
+        return System.nanoTime() - lastFlush
+                >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > text.length) {
+            text = Arrays.copyOf(text, Math.max(capacity, text.length * 2));
+            textView = CharBuffer.wrap(text);
+        }
+    }
+
+    private void addSpecs(int start, int length) {
+        Type lineType = parser.getType();
+        int fromLine = 0;
+        int toLine = 0;
+        if (lineType == Type.FROM_FILE) {
+            String file = termString(start);
+            lines.addFile(file.startsWith("/dev/null")
+                          ? null : file.replaceFirst("^a/", ""));
+        } else if (lineType == Type.TO_FILE) {
+            String file = termString(start);
+            if (!file.startsWith("/dev/null")) {
+                lines.setFile(file.replaceFirst("^b/", ""));
+            }
+        } else if (lineType == Type.CONTEXT
+                || lineType == Type.ADDED
+                || lineType == Type.REMOVED) {
+            if (lineType != Type.ADDED) {
+                fromLine = parser.getFromLine();
+            }
+            if (lineType != Type.REMOVED) {
+                toLine = parser.getToLine();
+            }
+        }
+        lines.add(lineType, fromLine, toLine);
+        addParagraph(lineType, start, length, parser.getTermEnd());
+    }
+
+    private Type replayLine(int start, int length) {
+        int lineNo = replayLine++;
+        Type lineType = replay.getType(lineNo);
+        addParagraph(lineType, start, length,
+                     (lineType == Type.HUNK) ? hunkEnd(start, length) : length);
+        return lineType;
+    }
+
+    /**
+     * @return  the length of the {@code "@@ ... @@"} hunk header, or
+     *          the line length if not found
+     */
+    private int hunkEnd(int start, int length) {
+        for (int i = start + 2, end = start + length - 1; i < end; i++) {
+            if (text[i] == '@' && text[i + 1] == '@') {
+                return i + 2 - start;
+            }
+        }
+        return length;
+    }
+
+    private void addParagraph(Type lineType, int start, int length, int labelStart) {
+        AttributeSet attrs = lineAttributes.get(lineType);
+        specs.add(new ElementSpec(attrs, ElementSpec.StartTagType));
+        if (lineType == Type.HUNK && labelStart < length) {
+            specs.add(content(SimpleAttributeSet.EMPTY, text, start, labelStart));
+            specs.add(content(hunkLabel, text, start + labelStart, length - labelStart));
+        } else {
+            specs.add(content(SimpleAttributeSet.EMPTY, text, start, length));
+        }
+        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+    }
+
+    /**
+     * @return  a content spec for the given part of the text
+     * @implNote  {@code ElementSpec} copies the whole given array (as of
+     *          JDK 17.0.9, f.e.), so every spec gets just its own part &ndash;
+     *          sharing the batch buffer makes appending a batch quadratic.
+     */
+    static ElementSpec content(AttributeSet attrs, char[] text, int offset, int length) {
+        return new ElementSpec(attrs, ElementSpec.ContentType,
+                Arrays.copyOfRange(text, offset, offset + length), 0, length);
+    }
+
+    private String termString(int lineStart) {
+        return new String(text, lineStart + parser.getTermStart(),
+                parser.getTermEnd() - parser.getTermStart());
+    }
+
+    /**
+     * Appends the pending lines to the document.
+     *
+     * @throws  BadLocationException  if appending to the document fails
+     */
+    void flush() throws BadLocationException {
+        if (specs.isEmpty()) return;
+
+        try {
+            document.appendLines(specs.toArray(new ElementSpec[specs.size()]), lines);
+        } finally {
+            specs.clear();
+            lines.clear();
+            lineCount = 0;
+            batchLimit = batchLines;
+            lastFlush = System.nanoTime();
+            textLength = 0;
+        }
+    }
+
+    /**
+     * Appends the pending lines, and the final incomplete line, if any.
+     *
+     * @param   tail  the last line of the input when it has no terminating
+     *          {@code '\n'}, or {@code null}
+     * @throws  BadLocationException  if appending to the document fails
+     */
+    void finish(String tail) throws BadLocationException {
+        if (tail != null && !tail.isEmpty()) {
+            int start = textLength;
+            ensureCapacity(start + tail.length());
+            tail.getChars(0, tail.length(), text, start);
+            textLength += tail.length();
+
+            // Unclassified, as it is not a complete line.
+            ElementSpec content = content(SimpleAttributeSet.EMPTY,
+                                          text, start, tail.length());
+            content.setDirection(ElementSpec.JoinNextDirection);
+            specs.add(content);
+        }
+        flush();
+    }
+
+}
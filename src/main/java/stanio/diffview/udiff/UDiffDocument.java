@@ -6,8 +6,9 @@ package stanio.diffview.udiff;
 
 import static stanio.diffview.udiff.UDiffEditorKit.udiffStyles;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
@@ -56,6 +57,10 @@ import stanio.diffview.udiff.ParseResult.Type;
  * <p>
  * The "Index: " line as well as the "diff command line" are used to identify
  * (and group) the following lines into a new "File entry".</p>
+ * <p>
+ * The line types, line numbers, and file entries are currently kept aside,
+ * in a {@link #getLineIndex() LineIndex}, and paragraphs carry just their
+ * logical style.</p>
  *
  * @see  UDiffParser
  */
@@ -63,6 +68,11 @@ import stanio.diffview.udiff.ParseResult.Type;
 public class UDiffDocument extends DefaultStyledDocument {
 
 
+    /**
+     * @deprecated  No longer set on the document elements.  Use the
+     *              {@link UDiffDocument#getLineIndex() line index}, instead.
+     */
+    @Deprecated
     public enum Attribute {
         FILE,
         FROM_LINE,
@@ -76,6 +86,9 @@ public class UDiffDocument extends DefaultStyledDocument {
         public static final String INSERTED_LINE = "inserted-line";
         public static final String DELETED_NUMBER = "deleted-number";
         public static final String INSERTED_NUMBER = "inserted-number";
+        public static final String DELETED_WORD = "deleted-word";
+        public static final String INSERTED_WORD = "inserted-word";
+        public static final String FILLER = "filler-line";
         public static final String MESSAGE = "message-text";
         public static final String DIFF_COMMAND = "diff-command";
         public static final String FROM_FILE = "from-file";
@@ -88,6 +101,8 @@ public class UDiffDocument extends DefaultStyledDocument {
     } // class Styles
 
 
+    private final LineIndex lineIndex = new LineIndex();
+
     public UDiffDocument() {
         this(DiffStyles.getDefault());
     }
@@ -129,6 +144,18 @@ public class UDiffDocument extends DefaultStyledDocument {
         super.replace(offset, length, text, attrs);
     }
 
+    /**
+     * @return  the type, line numbers, and file entry of every complete
+     *          line of this document, by paragraph index
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    StyleContext getStyleContext() {
+        return (StyleContext) getAttributeContext();
+    }
+
     private void checkParseThread() {
         Thread th = parseThread;
         if (th == null || th == Thread.currentThread())
@@ -137,6 +164,57 @@ public class UDiffDocument extends DefaultStyledDocument {
         throw new IllegalStateException("Ongoing parsing in another thread");
     }
 
+    /**
+     * Appends lines given as paragraph element specs ({@code StartTag},
+     * {@code Content}..., {@code EndTag}), in a single structural change
+     * and a single insert event.  A final incomplete line may be given as
+     * a single {@code Content} spec with {@code JoinNextDirection}, which
+     * becomes part of the trailing paragraph.  The given index entries are
+     * appended to the document line index, prior to the insert event.
+     *
+     * @param   lines  element specs for the lines to append
+     * @param   index  type, line numbers, and file entries of the lines
+     * @throws  BadLocationException  if the content rejects the insert
+     * @see     UDiffBuilder
+     */
+    void appendLines(ElementSpec[] lines, LineIndex index)
+            throws BadLocationException {
+        checkParseThread();
+        if (lines.length == 0) return;
+
+        int count = lines.length;
+        ElementSpec tail = lines[count - 1];
+        if (tail.getType() == ElementSpec.ContentType) {
+            count -= 1;
+        } else {
+            tail = null;
+        }
+        ElementSpec trailing = new ElementSpec(null, ElementSpec.StartTagType);
+        trailing.setDirection(ElementSpec.JoinNextDirection);
+
+        List<ElementSpec> specs = new ArrayList<>(count + 3);
+        // Open the root when (re)creating the structure, otherwise close the
+        // trailing paragraph, and join it back at the end.
+        specs.add(new ElementSpec(null, getLength() == 0
+                                        ? ElementSpec.StartTagType
+                                        : ElementSpec.EndTagType));
+        specs.addAll(Arrays.asList(lines).subList(0, count));
+        specs.add(trailing);
+        if (tail != null) {
+            specs.add(tail);
+        }
+
+        ElementSpec[] data = specs.toArray(new ElementSpec[specs.size()]);
+        if (getLength() == 0) {
+            lineIndex.clear();
+            lineIndex.addAll(index);
+            create(data);
+        } else {
+            lineIndex.addAll(index);
+            insert(getLength(), data);
+        }
+    }
+
     private volatile Thread parseThread;
     private UDiffParser readParser;
 
@@ -144,11 +222,8 @@ public class UDiffDocument extends DefaultStyledDocument {
         this.readParser = parser;
         if (parser == null) {
             parseThread = null;
-            lineNumbers = null;
-            last = null;
         } else {
             parseThread = Thread.currentThread();
-            lineNumbers = new HashMap<>();
         }
     }
 
@@ -177,9 +252,6 @@ public class UDiffDocument extends DefaultStyledDocument {
 
     }
 
-    private Map<Integer, String> lineNumbers;
-    private Element last;
-
     private void updateLine(Element paragraph,
                             UDiffParser parser,
                             DocumentSegment line,
@@ -188,6 +260,8 @@ public class UDiffDocument extends DefaultStyledDocument {
 
         Type lineType = parser.getType();
         setLogicalStyle(paragraph, lineType);
+        int fromLine = 0;
+        int toLine = 0;
         if (lineType == Type.HUNK) {
             Style hunkLabel = getStyle(StyleName.HUNK_LABEL);
             int labelStart = paragraph.getStartOffset() + parser.getTermEnd();
@@ -197,31 +271,24 @@ public class UDiffDocument extends DefaultStyledDocument {
             attrs.addAttributes(hunkLabel);
         } else if (lineType == Type.FROM_FILE) {
             String file = line.substring(parser.getTermStart(), parser.getTermEnd());
-            if (!file.startsWith("/dev/null")) {
-                MutableAttributeSet a = (MutableAttributeSet) paragraph.getAttributes();
-                a.addAttribute(Attribute.FILE, file.replaceFirst("^a/", ""));
-            }
+            lineIndex.addFile(file.startsWith("/dev/null")
+                              ? null : file.replaceFirst("^a/", ""));
         } else if (lineType == Type.TO_FILE) {
             String file = line.substring(parser.getTermStart(), parser.getTermEnd());
             if (!file.startsWith("/dev/null")) {
-                MutableAttributeSet a = (MutableAttributeSet) last.getAttributes();
-                a.addAttribute(Attribute.FILE, file.replaceFirst("^b/", ""));
+                lineIndex.setFile(file.replaceFirst("^b/", ""));
             }
         } else if (lineType == Type.CONTEXT
                 || lineType == Type.ADDED
                 || lineType == Type.REMOVED) {
-            String fromLine = lineNumbers.computeIfAbsent(parser.getFromLine(), Object::toString);
-            String toLine = lineNumbers.computeIfAbsent(parser.getToLine(), Object::toString);
-
-            MutableAttributeSet attrs = (MutableAttributeSet) paragraph.getAttributes();
             if (lineType != Type.ADDED) {
-                attrs.addAttribute(Attribute.FROM_LINE, fromLine);
+                fromLine = parser.getFromLine();
             }
             if (lineType != Type.REMOVED) {
-                attrs.addAttribute(Attribute.TO_LINE, toLine);
+                toLine = parser.getToLine();
             }
         }
-        last = paragraph;
+        lineIndex.add(lineType, fromLine, toLine);
     }
 
     private void setLogicalStyle(Element paragraph, Type lineType) {
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
@@ -37,8 +38,24 @@ public class UDiffEditorKit extends StyledEditorKit {
         udiffStyles = styleMap;
     }
 
+    static final int PARALLEL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Document property for a (cached) {@code LineIndex} of the input to
+     * read, to use instead of parsing it.  The property is cleared after
+     * reading.
+     *
+     * @see  LineIndexCache
+     */
+    public static final String INDEX_PROPERTY = "stanio.diffview.lineIndex";
+
     private final ViewFactory viewFactory;
 
+    private int parallelThreshold =
+            (ForkJoinPool.getCommonPoolParallelism() > 1) ? PARALLEL_THRESHOLD : -1;
+
+    private int segmentLength;
+
     public UDiffEditorKit() {
         this.viewFactory = new BoxBackgroundFactory(super.getViewFactory());
     }
@@ -62,28 +79,70 @@ public class UDiffEditorKit extends StyledEditorKit {
                 parse(in, (UDiffDocument) doc);
             } finally {
                 ((UDiffDocument) doc).setReadParser(null);
+                doc.putProperty(INDEX_PROPERTY, null);
             }
         } else {
             super.read(in, doc, pos);
         }
     }
 
+    /**
+     * Parses the input into the given (empty) document.
+     * <p>
+     * Input up to {@value #PARALLEL_THRESHOLD} chars is parsed sequentially,
+     * as read.  If the common {@code ForkJoinPool} has a parallelism greater
+     * than 1, the rest of larger input, starting from the next file entry,
+     * is then read and parsed in segments using a {@code ParallelParser}.</p>
+     * <p>
+     * If the document has an {@link #INDEX_PROPERTY} index, the line types
+     * and numbers are taken from it, and no parsing takes place.</p>
+     */
     void parse(Reader in, UDiffDocument document)
             throws IOException, BadLocationException
     {
-        int pos = 0;
-        document.setReadParser(new UDiffParser());
-        char[] buf = new char[8 * 1024];
-        int bufLen;
-
-        while ((bufLen = in.read(buf)) >= 0) {
-            if (bufLen == 0) {
-                Thread.yield();
-                continue;
+        UDiffParser parser = new UDiffParser();
+        document.setReadParser(parser);
+        UDiffBuilder builder = new UDiffBuilder(document, parser);
+        Object index = document.getProperty(INDEX_PROPERTY);
+        boolean parallel = parallelThreshold >= 0;
+        if (index instanceof LineIndex) {
+            builder.replay((LineIndex) index);
+            parallel = false;
+        }
+        LineReader lines = new LineReader(in);
+        long length = 0;
+        String tail = null;
+        while (lines.next()) {
+            char[] buf = lines.buffer();
+            int start = lines.lineStart();
+            int end = lines.lineEnd();
+            if (parallel && length >= parallelThreshold
+                    && ParallelParser.isFileStart(buf, start, end)) {
+                builder.flush();
+                new ParallelParser(document, segmentLength)
+                        .parse(lines, parser);
+                return;
+            }
+            if (end > start && buf[end - 1] == '\n') {
+                builder.addLine(buf, start, end - start);
+            } else {
+                tail = new String(buf, start, end - start);
             }
-            document.insertString(pos, new String(buf, 0, bufLen), null);
-            pos += bufLen;
+            length += end - start;
         }
+        builder.finish(tail);
+    }
+
+    /**
+     * @param   threshold  input length to switch to parallel parsing after,
+     *          or {@code -1} to parse sequentially
+     * @param   segmentLength  minimum segment length for parallel parsing,
+     *          or {@code 0} for the default
+     * @see     ParallelParser#ParallelParser(UDiffDocument, int)
+     */
+    void setParallelThreshold(int threshold, int segmentLength) {
+        this.parallelThreshold = threshold;
+        this.segmentLength = segmentLength;
     }
 
 }
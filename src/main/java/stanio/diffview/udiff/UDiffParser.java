@@ -8,6 +8,16 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Classifies unified diff lines, one line at a time.
+ * <p>
+ * The default implementation dispatches on the first character of the line
+ * and matches the expected prefixes by hand, working directly on the given
+ * {@code CharSequence} (f.e. a {@code DocumentSegment}) without creating
+ * intermediate strings.  The original regular expression-based matching is
+ * still available as a fallback &ndash; it is enabled by constructing the
+ * parser with {@code useRegex = true}, or by setting the {@value
+ * #REGEX_PROPERTY} system property to {@code true}.</p>
+ *
  * @see  <a href="https://www.gnu.org/software/diffutils/manual/html_node/Unified-Format.html"
  *              >Unified Format</a> <i>(GNU Diffutils)</i>
  * @see  <a href="https://www.gnu.org/software/diffutils/manual/html_node/Multiple-Patches.html"
@@ -15,13 +25,9 @@ import java.util.regex.Pattern;
  */
 class UDiffParser implements ParseResult {
 
-    private final Matcher indexLine = Pattern.compile("^Index: .+").matcher("");
-    private final Matcher diffCmd   = Pattern.compile("^diff ").matcher("");
-    private final Matcher fromFile  = Pattern.compile("^--- [^\\x00-\\x1F}]+").matcher("");
-    private final Matcher toFile    = Pattern.compile("^\\+\\+\\+ [^\\x00-\\x1F}]+").matcher("");
-    private final Matcher hunk      = Pattern.compile("^@@ -([0-9]+)(?:,([0-9]+))? \\+([0-9]+)(?:,([0-9]+))? @@").matcher("");
-    private final Matcher removed   = Pattern.compile("^-").matcher("");
-    private final Matcher added     = Pattern.compile("^\\+").matcher("");
+    static final String REGEX_PROPERTY = "stanio.diffview.udiff.regexParser";
+
+    private final RegexMatchers regex;
 
     private Type type = Type.MESSAGE;
 
@@ -34,7 +40,66 @@ class UDiffParser implements ParseResult {
     private int fromRemaining = 0;
     private int toRemaining = 0;
 
-    private String text;
+    // Hunk header numbers, valid after a successful matchHunk()
+    private int hunkFromLine;
+    private int hunkFromLength;
+    private int hunkToLine;
+    private int hunkToLength;
+
+    // Scan position of the last parseNumber()
+    private int numberEnd;
+
+    UDiffParser() {
+        this(Boolean.getBoolean(REGEX_PROPERTY));
+    }
+
+    UDiffParser(boolean useRegex) {
+        this.regex = useRegex ? new RegexMatchers() : null;
+    }
+
+    /**
+     * Constructs a parser continuing from the state of the given one.
+     *
+     * @param   state  parser to copy the state from
+     */
+    UDiffParser(UDiffParser state) {
+        this(state.regex != null);
+        this.type = state.type;
+        this.fromLine = state.fromLine;
+        this.toLine = state.toLine;
+        this.termStart = state.termStart;
+        this.termEnd = state.termEnd;
+        this.fromRemaining = state.fromRemaining;
+        this.toRemaining = state.toRemaining;
+    }
+
+    /**
+     * Tests whether the given parser is in the same state as this one, that
+     * is, it would classify any following lines the same way.  The line
+     * numbers and the remaining hunk lengths are compared only while in a
+     * hunk, as any other state gets to a new hunk header before using them.
+     * The current line term bounds are not compared.
+     *
+     * @param   other  parser to compare to
+     * @return  {@code true} if the given parser has the same state
+     */
+    boolean sameState(UDiffParser other) {
+        if (type != other.type)
+            return false;
+
+        switch (type) {
+        case HUNK:
+        case CONTEXT:
+        case ADDED:
+        case REMOVED:
+            return fromLine == other.fromLine
+                    && toLine == other.toLine
+                    && fromRemaining == other.fromRemaining
+                    && toRemaining == other.toRemaining;
+        default:
+            return true;
+        }
+    }
 
     @Override
     public Type getType() {
@@ -61,88 +126,242 @@ class UDiffParser implements ParseResult {
         return termEnd;
     }
 
-    private final boolean find(Matcher m) {
-        return m.reset(text).find();
-    }
-
     public void update(CharSequence line) {
-        text = line.toString();
+        if (regex != null) {
+            regex.update(line);
+            return;
+        }
+
         termStart = 0;
         termEnd = line.length();
 
-        if (find(hunk)) {
-            fromLine = Integer.parseInt(hunk.group(1)) - 1;
-            String fromLength = hunk.group(2);
-            fromRemaining = fromLength == null ? 1 : Integer.parseInt(fromLength);
-            toLine = Integer.parseInt(hunk.group(3)) - 1;
-            String toLength = hunk.group(4);
-            toRemaining = toLength == null ? 1 : Integer.parseInt(toLength);
+        int end;
+        if ((end = matchHunk(line)) > 0) {
+            fromLine = hunkFromLine - 1;
+            fromRemaining = hunkFromLength;
+            toLine = hunkToLine - 1;
+            toRemaining = hunkToLength;
             type = Type.HUNK;
-            termEnd = hunk.end();
+            termEnd = end;
         } else if (type == Type.MESSAGE) {
-            if (find(diffCmd)) {
+            if (startsWith(line, "diff ")) {
                 type = Type.DIFF_CMD;
-            } else if (find(indexLine)) {
+            } else if ((end = matchIndex(line)) > 0) {
                 type = Type.INDEX;
                 termStart = 7;
-                termEnd = indexLine.end();
-            } else if (find(fromFile)) {
+                termEnd = end;
+            } else if ((end = matchFile(line, '-')) > 0) {
                 type = Type.FROM_FILE;
                 termStart = 4;
-                termEnd = fromFile.end();
+                termEnd = end;
             }
         } else if (type == Type.DIFF_CMD || type == Type.INDEX) {
-            if (find(fromFile)) {
+            if (matchFile(line, '-') > 0) {
                 type = Type.FROM_FILE;
                 termStart = 4;
             } else {
                 type = Type.MESSAGE;
             }
         } else if (type == Type.FROM_FILE) {
-            if (find(toFile)) {
+            if ((end = matchFile(line, '+')) > 0) {
                 type = Type.TO_FILE;
                 termStart = 4;
-                termEnd = toFile.end();
+                termEnd = end;
             } else {
                 type = Type.MESSAGE;
             }
-        } else if ((line.length() == 0 || line.charAt(0) == ' ')
-                && (fromRemaining > 0 || toRemaining > 0)) {
-            fromLine++;
-            fromRemaining--;
-            toLine++;
-            toRemaining--;
-            type = Type.CONTEXT;
-            termStart = 1;
-        } else if (find(removed)) {
+        } else {
+            updateHunkLine(line);
+        }
+    }
+
+    private void updateHunkLine(CharSequence line) {
+        char first = line.length() == 0 ? ' ' : line.charAt(0);
+        switch (first) {
+        case ' ':
+            if (fromRemaining > 0 || toRemaining > 0) {
+                fromLine++;
+                fromRemaining--;
+                toLine++;
+                toRemaining--;
+                type = Type.CONTEXT;
+                termStart = 1;
+                return;
+            }
+            break;
+
+        case '-':
             fromLine++;
             fromRemaining--;
             type = Type.REMOVED;
             termStart = 1;
-        } else if (find(added)) {
+            return;
+
+        case '+':
             toLine++;
             toRemaining--;
             type = Type.ADDED;
             termStart = 1;
-        } else if (find(indexLine)) {
-            type = Type.INDEX;
-            termStart = 7;
-            fromLine = 0;
-            toLine = 0;
-        } else if (find(diffCmd)) {
-            type = Type.DIFF_CMD;
-            fromLine = 0;
-            toLine = 0;
-        } else if (find(fromFile)) {
-            type = Type.FROM_FILE;
-            termStart = 4;
-            fromLine = 0;
-            toLine = 0;
-        } else {
-            fromLine = 0;
-            toLine = 0;
-            type = Type.MESSAGE;
+            return;
+
+        case 'I':
+            if (matchIndex(line) > 0) {
+                type = Type.INDEX;
+                termStart = 7;
+                fromLine = 0;
+                toLine = 0;
+                return;
+            }
+            break;
+
+        case 'd':
+            if (startsWith(line, "diff ")) {
+                type = Type.DIFF_CMD;
+                fromLine = 0;
+                toLine = 0;
+                return;
+            }
+            break;
+
+        default:
+            // Message
+        }
+        fromLine = 0;
+        toLine = 0;
+        type = Type.MESSAGE;
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        int len = prefix.length();
+        if (line.length() < len)
+            return false;
+
+        for (int i = 0; i < len; i++) {
+            if (line.charAt(i) != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Matches {@code ^Index: .+}.
+     *
+     * @return  the match end index, or {@code -1} if the line doesn't match
+     */
+    private static int matchIndex(CharSequence line) {
+        if (!startsWith(line, "Index: "))
+            return -1;
+
+        int i = 7;
+        for (int len = line.length(); i < len; i++) {
+            if (isLineTerminator(line.charAt(i)))
+                break;
+        }
+        return (i > 7) ? i : -1;
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        // As for the regex '.' character class, w/o UNIX_LINES
+        return ch == '\n' || ch == '\r' || ch == '\u0085'
+                || ch == '\u2028' || ch == '\u2029';
+    }
+
+    /**
+     * Matches a {@code "--- "} (<var>marker</var> = {@code '-'}), or
+     * {@code "+++ "} (<var>marker</var> = {@code '+'}) prefix followed by
+     * one or more characters other than control characters and <code>'&#125;'</code>.
+     *
+     * @return  the match end index, or {@code -1} if the line doesn't match
+     */
+    private static int matchFile(CharSequence line, char marker) {
+        int len = line.length();
+        if (len < 5
+                || line.charAt(0) != marker
+                || line.charAt(1) != marker
+                || line.charAt(2) != marker
+                || line.charAt(3) != ' ')
+            return -1;
+
+        int i = 4;
+        for (; i < len; i++) {
+            char ch = line.charAt(i);
+            if (ch <= 0x1F || ch == '}')
+                break;
         }
+        return (i > 4) ? i : -1;
+    }
+
+    /**
+     * Matches {@code ^@@ -([0-9]+)(?:,([0-9]+))? \+([0-9]+)(?:,([0-9]+))? @@}
+     * setting the {@code hunk*} fields from the captured numbers.
+     *
+     * @implNote  Numbers that overflow {@code int} make the line not match
+     * as a hunk header, while the regex-based matching throws
+     * {@code NumberFormatException} for these.
+     *
+     * @return  the match end index, or {@code -1} if the line doesn't match
+     */
+    private int matchHunk(CharSequence line) {
+        if (!startsWith(line, "@@ -"))
+            return -1;
+
+        int len = line.length();
+        if ((hunkFromLine = parseNumber(line, 4)) < 0)
+            return -1;
+
+        int pos = numberEnd;
+        hunkFromLength = 1;
+        if (pos < len && line.charAt(pos) == ',') {
+            if ((hunkFromLength = parseNumber(line, pos + 1)) < 0)
+                return -1;
+            pos = numberEnd;
+        }
+
+        if (pos + 1 >= len
+                || line.charAt(pos) != ' '
+                || line.charAt(pos + 1) != '+'
+                || (hunkToLine = parseNumber(line, pos + 2)) < 0)
+            return -1;
+
+        pos = numberEnd;
+        hunkToLength = 1;
+        if (pos < len && line.charAt(pos) == ',') {
+            if ((hunkToLength = parseNumber(line, pos + 1)) < 0)
+                return -1;
+            pos = numberEnd;
+        }
+
+        if (pos + 2 >= len
+                || line.charAt(pos) != ' '
+                || line.charAt(pos + 1) != '@'
+                || line.charAt(pos + 2) != '@')
+            return -1;
+
+        return pos + 3;
+    }
+
+    /**
+     * Parses an unsigned decimal number starting at the given index, setting
+     * {@code numberEnd} to the index following the last digit.
+     *
+     * @return  the number value, or {@code -1} if there are no digits at
+     *          the given index, or the value overflows {@code int}
+     */
+    private int parseNumber(CharSequence line, int start) {
+        int value = 0;
+        int i = start;
+        for (int len = line.length(); i < len; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+
+            if (value > (Integer.MAX_VALUE - digit) / 10)
+                return -1;
+
+            value = value * 10 + digit;
+        }
+        numberEnd = i;
+        return (i > start) ? value : -1;
     }
 
     public ParseResult toParseResult() {
@@ -163,6 +382,110 @@ class UDiffParser implements ParseResult {
     }
 
 
+    /**
+     * The original regular expression-based line matching.
+     */
+    private final class RegexMatchers {
+
+        private final Matcher indexLine = Pattern.compile("^Index: .+").matcher("");
+        private final Matcher diffCmd   = Pattern.compile("^diff ").matcher("");
+        private final Matcher fromFile  = Pattern.compile("^--- [^\\x00-\\x1F}]+").matcher("");
+        private final Matcher toFile    = Pattern.compile("^\\+\\+\\+ [^\\x00-\\x1F}]+").matcher("");
+        private final Matcher hunk      = Pattern.compile("^@@ -([0-9]+)(?:,([0-9]+))? \\+([0-9]+)(?:,([0-9]+))? @@").matcher("");
+        private final Matcher removed   = Pattern.compile("^-").matcher("");
+        private final Matcher added     = Pattern.compile("^\\+").matcher("");
+
+        private String text;
+
+        RegexMatchers() {/* no-op */}
+
+        private boolean find(Matcher m) {
+            return m.reset(text).find();
+        }
+
+        void update(CharSequence line) {
+            text = line.toString();
+            termStart = 0;
+            termEnd = line.length();
+
+            if (find(hunk)) {
+                fromLine = Integer.parseInt(hunk.group(1)) - 1;
+                String fromLength = hunk.group(2);
+                fromRemaining = fromLength == null ? 1 : Integer.parseInt(fromLength);
+                toLine = Integer.parseInt(hunk.group(3)) - 1;
+                String toLength = hunk.group(4);
+                toRemaining = toLength == null ? 1 : Integer.parseInt(toLength);
+                type = Type.HUNK;
+                termEnd = hunk.end();
+            } else if (type == Type.MESSAGE) {
+                if (find(diffCmd)) {
+                    type = Type.DIFF_CMD;
+                } else if (find(indexLine)) {
+                    type = Type.INDEX;
+                    termStart = 7;
+                    termEnd = indexLine.end();
+                } else if (find(fromFile)) {
+                    type = Type.FROM_FILE;
+                    termStart = 4;
+                    termEnd = fromFile.end();
+                }
+            } else if (type == Type.DIFF_CMD || type == Type.INDEX) {
+                if (find(fromFile)) {
+                    type = Type.FROM_FILE;
+                    termStart = 4;
+                } else {
+                    type = Type.MESSAGE;
+                }
+            } else if (type == Type.FROM_FILE) {
+                if (find(toFile)) {
+                    type = Type.TO_FILE;
+                    termStart = 4;
+                    termEnd = toFile.end();
+                } else {
+                    type = Type.MESSAGE;
+                }
+            } else if ((line.length() == 0 || line.charAt(0) == ' ')
+                    && (fromRemaining > 0 || toRemaining > 0)) {
+                fromLine++;
+                fromRemaining--;
+                toLine++;
+                toRemaining--;
+                type = Type.CONTEXT;
+                termStart = 1;
+            } else if (find(removed)) {
+                fromLine++;
+                fromRemaining--;
+                type = Type.REMOVED;
+                termStart = 1;
+            } else if (find(added)) {
+                toLine++;
+                toRemaining--;
+                type = Type.ADDED;
+                termStart = 1;
+            } else if (find(indexLine)) {
+                type = Type.INDEX;
+                termStart = 7;
+                fromLine = 0;
+                toLine = 0;
+            } else if (find(diffCmd)) {
+                type = Type.DIFF_CMD;
+                fromLine = 0;
+                toLine = 0;
+            } else if (find(fromFile)) {
+                type = Type.FROM_FILE;
+                termStart = 4;
+                fromLine = 0;
+                toLine = 0;
+            } else {
+                fromLine = 0;
+                toLine = 0;
+                type = Type.MESSAGE;
+            }
+        }
+
+    } // class RegexMatchers
+
+
     private static class Result implements ParseResult {
 
         private final Type type;
@@ -0,0 +1,147 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import stanio.diffview.udiff.ParseResult.Type;
+
+/**
+ * Prints a unified diff as text, with from/to line number columns, and
+ * optionally colored using ANSI escape sequences.  Meant for headless use
+ * (terminals, CI logs) &ndash; no Swing document is created.
+ * <p>
+ * The input is read, classified, and written one line at a time, so the
+ * memory used is bounded by the longest line, no matter the input size.</p>
+ *
+ * @see  <a href="https://en.wikipedia.org/wiki/ANSI_escape_code#SGR_(Select_Graphic_Rendition)_parameters"
+ *              >SGR (Select Graphic Rendition) parameters</a> <i>(ANSI escape code &ndash; Wikipedia)</i>
+ */
+public final class UDiffPrinter {
+
+    static final int NUMBER_WIDTH = 5;
+
+    private static final String RESET = "\033[m";
+    private static final String BOLD = "\033[1m";
+    private static final String DIM = "\033[2m";
+    private static final String RED = "\033[31m";
+    private static final String GREEN = "\033[32m";
+    private static final String CYAN = "\033[36m";
+
+    private final Writer out;
+
+    private final boolean ansi;
+
+    private final UDiffParser parser = new UDiffParser();
+
+    private final char[] number = new char[Math.max(NUMBER_WIDTH, 10)];
+
+    /**
+     * @param   out  the output to print to
+     * @param   ansi  whether to color the output using ANSI escape sequences
+     */
+    public UDiffPrinter(Writer out, boolean ansi) {
+        this.out = out;
+        this.ansi = ansi;
+    }
+
+    /**
+     * Prints all the input.  The output is flushed, but not closed.
+     *
+     * @param   in  the unified diff to print
+     * @throws  IOException  if an I/O error occurs
+     */
+    public void print(Reader in) throws IOException {
+        LineReader lines = new LineReader(in);
+        while (lines.next()) {
+            if (lines.lineEnd() == lines.lineStart()) break; // At the end
+
+            printLine(lines);
+        }
+        out.flush();
+    }
+
+    private void printLine(LineReader lines) throws IOException {
+        parser.update(lines.line());
+        Type lineType = parser.getType();
+        boolean from = lineType == Type.CONTEXT || lineType == Type.REMOVED;
+        boolean to = lineType == Type.CONTEXT || lineType == Type.ADDED;
+
+        String color = ansi ? color(lineType) : null;
+        if (ansi) {
+            out.write((color == null) ? DIM : color);
+        }
+        writeNumber(from ? parser.getFromLine() : 0);
+        out.write(' ');
+        writeNumber(to ? parser.getToLine() : 0);
+        out.write(" | ");
+        if (ansi) {
+            out.write(RESET);
+        }
+
+        char[] buf = lines.buffer();
+        int start = lines.lineStart();
+        int length = lines.lineEnd() - start;
+        if (length > 0 && buf[start + length - 1] == '\n') length--;
+        if (length > 0 && buf[start + length - 1] == '\r') length--;
+
+        if (color == null) {
+            out.write(buf, start, length);
+        } else if (lineType == Type.HUNK) {
+            // Just the "@@ ... @@" part, not the section heading
+            int end = Math.min(parser.getTermEnd(), length);
+            out.write(color);
+            out.write(buf, start, end);
+            out.write(RESET);
+            out.write(buf, start + end, length - end);
+        } else {
+            out.write(color);
+            out.write(buf, start, length);
+            out.write(RESET);
+        }
+        out.write('\n');
+    }
+
+    private static String color(Type lineType) {
+        switch (lineType) {
+        case DIFF_CMD:
+        case INDEX:
+        case FROM_FILE:
+        case TO_FILE:
+            return BOLD;
+        case HUNK:
+            return CYAN;
+        case REMOVED:
+            return RED;
+        case ADDED:
+            return GREEN;
+        case NONL_ATEOF:
+            return DIM;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given number right-aligned in {@value #NUMBER_WIDTH}
+     * columns, or blanks if the number is not positive.
+     */
+    private void writeNumber(int value) throws IOException {
+        char[] buf = number;
+        int pos = buf.length;
+        while (value > 0) {
+            buf[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        int start = Math.min(pos, buf.length - NUMBER_WIDTH);
+        for (int i = start; i < pos; i++) {
+            buf[i] = ' ';
+        }
+        out.write(buf, start, buf.length - start);
+    }
+
+}
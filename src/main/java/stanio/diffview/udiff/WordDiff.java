@@ -0,0 +1,265 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Word-level difference between a run of removed lines and the following
+ * run of added lines.
+ * <p>
+ * The texts are split into tokens: words (letters, digits, and {@code '_'}),
+ * white space runs, line terminators, and single other characters.  The
+ * token sequences are compared using the Myers' O(ND) algorithm, after
+ * skipping their common prefix and suffix, and the changed tokens are
+ * reported as character ranges of either text.  Line terminators are never
+ * reported as changed, so no range spans multiple lines.</p>
+ * <p>
+ * The comparison gives up on texts of more than {@value #MAX_TOKENS} tokens,
+ * or more than {@value #MAX_EDITS} token edits, as highlighting would not
+ * help much with such changes anyway.</p>
+ *
+ * @see  <a href="http://www.xmailserver.org/diff2.pdf">An O(ND) Difference
+ *          Algorithm and Its Variations</a> <i>(Eugene W. Myers)</i>
+ */
+public final class WordDiff {
+
+    static final int MAX_TOKENS = 10_000;
+
+    static final int MAX_EDITS = 1000;
+
+    private static final int[] NONE = new int[0];
+
+    private static final WordDiff EMPTY = new WordDiff(NONE, NONE);
+
+    private final int[] removed;
+    private final int[] added;
+
+    private WordDiff(int[] removed, int[] added) {
+        this.removed = removed;
+        this.added = added;
+    }
+
+    /**
+     * @return  pairs of (start, end) indices of the changed parts of the
+     *          removed text
+     */
+    public int[] getRemovedRanges() {
+        return removed.clone();
+    }
+
+    /**
+     * @return  pairs of (start, end) indices of the changed parts of the
+     *          added text
+     */
+    public int[] getAddedRanges() {
+        return added.clone();
+    }
+
+    /**
+     * @return  {@code true} if there are no changed ranges, either because
+     *          the texts are equal, or the comparison gave up
+     */
+    public boolean isEmpty() {
+        return removed.length == 0 && added.length == 0;
+    }
+
+    /**
+     * Compares the given texts.  The diff line markers ({@code '-'} and
+     * {@code '+'}) should be excluded, or replaced with a space.
+     *
+     * @param   removedText  text of the removed lines
+     * @param   addedText  text of the added lines
+     * @return  the changed ranges of both texts
+     */
+    public static WordDiff compute(CharSequence removedText,
+                                   CharSequence addedText) {
+        int[] fromBounds = tokenize(removedText);
+        int[] toBounds = tokenize(addedText);
+        int n = fromBounds.length - 1;
+        int m = toBounds.length - 1;
+        if (n > MAX_TOKENS || m > MAX_TOKENS) {
+            return EMPTY;
+        }
+
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = tokenIds(removedText, fromBounds, ids);
+        int[] b = tokenIds(addedText, toBounds, ids);
+        boolean[] fromChanged = new boolean[n];
+        boolean[] toChanged = new boolean[m];
+        if (!compare(a, b, fromChanged, toChanged)) {
+            return EMPTY;
+        }
+        return new WordDiff(ranges(removedText, fromBounds, fromChanged),
+                            ranges(addedText, toBounds, toChanged));
+    }
+
+    /**
+     * @return  token start indices, followed by the text length
+     */
+    static int[] tokenize(CharSequence text) {
+        int length = text.length();
+        int[] bounds = new int[Math.min(length, 64) + 1];
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            if (count + 1 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = i;
+
+            char ch = text.charAt(i++);
+            if (isWordChar(ch)) {
+                while (i < length && isWordChar(text.charAt(i))) i++;
+            } else if (isBlank(ch)) {
+                while (i < length && isBlank(text.charAt(i))) i++;
+            } else if (ch == '\r' && i < length && text.charAt(i) == '\n') {
+                i++;
+            }
+        }
+        bounds[count++] = length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+
+    private static boolean isBlank(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\f';
+    }
+
+    private static boolean isLineEnd(char ch) {
+        return ch == '\n' || ch == '\r';
+    }
+
+    private static int[] tokenIds(CharSequence text, int[] bounds,
+                                  Map<String, Integer> ids) {
+        int[] tokens = new int[bounds.length - 1];
+        for (int i = 0; i < tokens.length; i++) {
+            String token = text.subSequence(bounds[i], bounds[i + 1]).toString();
+            Integer id = ids.get(token);
+            if (id == null) {
+                id = ids.size();
+                ids.put(token, id);
+            }
+            tokens[i] = id;
+        }
+        return tokens;
+    }
+
+    /**
+     * Marks the tokens not part of the longest common subsequence.
+     *
+     * @return  {@code false} if giving up due to too many edits
+     */
+    static boolean compare(int[] a, int[] b,
+                           boolean[] aChanged, boolean[] bChanged) {
+        int start = 0;
+        int aEnd = a.length;
+        int bEnd = b.length;
+        while (start < aEnd && start < bEnd && a[start] == b[start]) {
+            start++;
+        }
+        while (aEnd > start && bEnd > start && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd--;
+            bEnd--;
+        }
+
+        int n = aEnd - start;
+        int m = bEnd - start;
+        int max = Math.min(n + m, MAX_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        int edits = -1;
+    search:
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[start + x] == b[start + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    edits = d;
+                    break search;
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        if (edits < 0) {
+            return false;
+        }
+
+        int x = n;
+        int y = m;
+        for (int d = edits; d > 0; d--) {
+            int[] prev = trace.get(d - 1); // k = -(d - 1) .. (d - 1)
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[k - 1 + d - 1] < prev[k + 1 + d - 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = prev[prevK + d - 1];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+            }
+            if (x == prevX) {
+                bChanged[start + prevY] = true;
+            } else {
+                aChanged[start + prevX] = true;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        return true;
+    }
+
+    private static int[] ranges(CharSequence text, int[] bounds,
+                                boolean[] changed) {
+        int[] ranges = new int[8];
+        int count = 0;
+        int rangeStart = -1;
+        for (int i = 0; i <= changed.length; i++) {
+            boolean highlight = i < changed.length && changed[i]
+                                && !isLineEnd(text.charAt(bounds[i]));
+            if (highlight && rangeStart < 0) {
+                rangeStart = bounds[i];
+            } else if (!highlight && rangeStart >= 0) {
+                if (count + 2 > ranges.length) {
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                }
+                ranges[count++] = rangeStart;
+                ranges[count++] = bounds[i];
+                rangeStart = -1;
+            }
+        }
+        return (count == 0) ? NONE : Arrays.copyOf(ranges, count);
+    }
+
+    @Override
+    public String toString() {
+        return "WordDiff(removed: " + Arrays.toString(removed)
+                + ", added: " + Arrays.toString(added) + ")";
+    }
+
+}
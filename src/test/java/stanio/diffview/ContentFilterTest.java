@@ -0,0 +1,80 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import stanio.diffview.udiff.UDiffDocument;
+import stanio.diffview.udiff.UDiffEditorKit;
+
+public class ContentFilterTest {
+
+    private static final String
+            BASE_CONTENT = "diff --git a/cheese.txt b/cheese.txt\n"
+                           + "--- a/cheese.txt\n"
+                           + "+++ b/cheese.txt\n"
+                           + "@@ -1,2 +1,2 @@ Cheddar\n"
+                           + "-Cheddar\tcheese\n"
+                           + "+Wensleydale\n"
+                           + " fondue\n"
+                           + "diff --git a/bread.txt b/bread.txt\n"
+                           + "--- a/bread.txt\n"
+                           + "+++ b/bread.txt\n"
+                           + "@@ -1,2 +1,2 @@\n"
+                           + " Cheddar toast\n"
+                           + "+Rye\n"
+                           + "-Sourdough\n";
+
+    private UDiffDocument document;
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+        document = new UDiffDocument();
+        new UDiffEditorKit().read(new StringReader(BASE_CONTENT), document, 0);
+    }
+
+    private boolean[] matches(Pattern pattern) {
+        ContentFilter filter = new ContentFilter(document, pattern, paths -> {/* */});
+        return new boolean[] { filter.matches(0), filter.matches(1) };
+    }
+
+    @Test
+    public void addedOrRemovedLines() throws Exception {
+        assertEquals(matches(Pattern.compile("Wensleydale")), new boolean[] { true, false }, "added");
+        assertEquals(matches(Pattern.compile("Cheddar")), new boolean[] { true, false }, "removed");
+        assertEquals(matches(Pattern.compile("fondue")), new boolean[] { false, false }, "context");
+    }
+
+    @Test
+    public void lineEnd() throws Exception {
+        assertEquals(matches(Pattern.compile("dough$")), new boolean[] { false, true }, "line end");
+        assertEquals(matches(Pattern.compile("Rye\\s")), new boolean[] { false, false }, "terminator");
+    }
+
+    @Test
+    public void indexAheadOfDocument() throws Exception {
+        UDiffDocument partial = new UDiffDocument();
+        partial.putProperty(UDiffEditorKit.INDEX_PROPERTY, document.getLineIndex());
+        String head = BASE_CONTENT.substring(0, BASE_CONTENT.indexOf("diff --git a/bread"));
+        new UDiffEditorKit().read(new StringReader(head), partial, 0);
+
+        ContentFilter filter = new ContentFilter(partial, Pattern.compile("Rye"), paths -> {/* */});
+        assertEquals(partial.getLineIndex().getFileCount(), 2, "indexed files");
+        assertEquals(filter.matches(1), false, "not loaded");
+    }
+
+    @Test
+    public void excludesLineMarker() throws Exception {
+        assertEquals(matches(Pattern.compile("^R")), new boolean[] { false, true }, "line start");
+        assertEquals(matches(Pattern.compile("\\+")), new boolean[] { false, false }, "marker");
+    }
+
+}
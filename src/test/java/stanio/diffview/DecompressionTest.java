@@ -0,0 +1,90 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.Test;
+
+import stanio.diffview.Decompression.CountingInputStream;
+
+public class DecompressionTest {
+
+    private static final String FOO_DIFF = "--- a/foo\n+++ b/foo\n@@ -1 +1 @@\n-foo\n+bar\n";
+
+    private static final String BAZ_DIFF = "--- a/baz\n+++ b/baz\n@@ -1 +1 @@\n-baz\n+qux\n";
+
+    @Test
+    public void plainText() throws Exception {
+        assertEquals(decompressed(bytes(FOO_DIFF)), FOO_DIFF);
+    }
+
+    @Test
+    public void gzip() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+            out.write(bytes(FOO_DIFF));
+        }
+        assertEquals(decompressed(buf.toByteArray()), FOO_DIFF);
+    }
+
+    @Test
+    public void zipEntries() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(buf)) {
+            out.putNextEntry(new ZipEntry("patches/"));
+            out.putNextEntry(new ZipEntry("patches/0001.diff"));
+            out.write(bytes(FOO_DIFF));
+            out.putNextEntry(new ZipEntry("patches/0002.diff"));
+            out.write(bytes(BAZ_DIFF));
+        }
+        assertEquals(decompressed(buf.toByteArray()), FOO_DIFF + BAZ_DIFF);
+    }
+
+    @Test
+    public void compressedBytesCounted() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+            out.write(bytes(FOO_DIFF));
+        }
+        CountingInputStream in = new CountingInputStream(
+                new ByteArrayInputStream(buf.toByteArray()));
+        try (InputStream decompressed = Decompression.decompressing(in)) {
+            decompressed.readAllBytes();
+        }
+        assertEquals(in.getCount(), buf.size(), "bytes read");
+    }
+
+    @Test
+    public void sniffOnFirstRead() throws Exception {
+        CountingInputStream in = new CountingInputStream(
+                new ByteArrayInputStream(bytes(FOO_DIFF)));
+        try (InputStream decompressed = Decompression.decompressing(in)) {
+            assertEquals(in.getCount(), 0, "bytes read before first read");
+            assertEquals(decompressed.read(), FOO_DIFF.charAt(0), "first byte");
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String decompressed(byte[] data) throws IOException {
+        try (InputStream in = Decompression
+                .decompressing(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+
+import javax.swing.SwingUtilities;
+
+import org.testng.annotations.Test;
+
+import stanio.diffview.udiff.UDiffDocument;
+import stanio.diffview.udiff.UDiffEditorKit;
+
+public class DiffLinesViewTest {
+
+    private static final String
+            BASE_CONTENT = "--- a/cheese.txt\n"
+                           + "+++ b/cheese.txt\n"
+                           + "@@ -1,2 +1,2 @@ label\n"
+                           + "-Cheddar\tcheese\n"
+                           + "+Wensleydale\n"
+                           + " fondue\n";
+
+    @Test
+    public void sizeFollowsDocument() throws Exception {
+        DiffLinesView view = new DiffLinesView();
+        UDiffDocument document = new UDiffDocument();
+        view.setDocument(document);
+
+        new UDiffEditorKit().read(new StringReader(BASE_CONTENT), document, 0);
+        SwingUtilities.invokeAndWait(() -> {/* updates posted */});
+
+        assertEquals(view.getRowCount(), 7, "row count"); // + trailing paragraph
+        Dimension size = view.getPreferredSize();
+        int charWidth = view.getFontMetrics(view.getFont()).charWidth('0');
+        assertEquals(size.height, 7 * view.getRowHeight(), "preferred height");
+        // "-Cheddar\tcheese\n": tab from column 8 to 16, + 7 (incl. newline), + 1
+        assertEquals(size.width, 24 * charWidth, "preferred width");
+    }
+
+    @Test
+    public void measureSetDocument() throws Exception {
+        DiffLinesView view = new DiffLinesView();
+        UDiffDocument document = new UDiffDocument();
+        new UDiffEditorKit().read(new StringReader(BASE_CONTENT), document, 0);
+        view.setDocument(document);
+        assertEquals(view.getRowCount(), 7, "row count");
+
+        SwingUtilities.invokeAndWait(() -> {/* measure steps posted */});
+        int charWidth = view.getFontMetrics(view.getFont()).charWidth('0');
+        assertEquals(view.getPreferredSize().width, 24 * charWidth, "preferred width");
+    }
+
+    @Test
+    public void modelToView() throws Exception {
+        DiffLinesView view = new DiffLinesView();
+        UDiffDocument document = new UDiffDocument();
+        new UDiffEditorKit().read(new StringReader(BASE_CONTENT), document, 0);
+        view.setDocument(document);
+
+        int cheese = BASE_CONTENT.indexOf("cheese\n");
+        Rectangle rect = view.modelToView(cheese);
+        int charWidth = view.getFontMetrics(view.getFont()).charWidth('0');
+        assertEquals(rect.getLocation(), new Point(16 * charWidth, 3 * view.getRowHeight()),
+                     "after tab");
+        assertEquals(view.viewToModel(rect.getLocation()),
+                     BASE_CONTENT.indexOf("-Cheddar"), "line start");
+    }
+
+    @Test
+    public void paintVisibleRows() throws Exception {
+        DiffLinesView view = new DiffLinesView();
+        UDiffDocument document = new UDiffDocument();
+        new UDiffEditorKit().read(new StringReader(BASE_CONTENT), document, 0);
+        view.setDocument(document);
+        view.setSize(200, view.getRowHeight() * 3);
+        int hit = BASE_CONTENT.indexOf("cheese\n");
+        view.setHighlight(hit, hit + 6, Color.YELLOW);
+
+        BufferedImage image = new BufferedImage(200, view.getRowHeight() * 3,
+                                                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setClip(0, view.getRowHeight(), 200, view.getRowHeight() * 2);
+            view.paint(g);
+            view.createRuler().paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import javax.swing.tree.TreePath;
+
+import org.testng.annotations.Test;
+
+public class FuzzyFilterTest {
+
+    private static int score(String text, String query) {
+        return FuzzyFilter.score(text.toCharArray(), query.toCharArray());
+    }
+
+    private static TreePath leafPath(FileTreeModel model, String path) {
+        TreePath treePath = new TreePath(model.getRoot());
+        for (String name : path.split("/")) {
+            FileTreeModel.Node parent = (FileTreeModel.Node) treePath.getLastPathComponent();
+            treePath = treePath.pathByAddingChild(parent.get(name));
+        }
+        return treePath;
+    }
+
+    @Test
+    public void subsequence() throws Exception {
+        assertTrue(score("src/main/cheese.txt", "smct") > 0, "in order");
+        assertEquals(score("src/main/cheese.txt", "tcm"), FuzzyFilter.NO_MATCH, "out of order");
+        assertEquals(score("src/main/cheese.txt", "cheeses"), FuzzyFilter.NO_MATCH, "missing");
+        assertTrue(score("src/main/cheese.txt", "") == 0, "empty");
+    }
+
+    @Test
+    public void scoring() throws Exception {
+        assertTrue(score("src/cheese.txt", "cheese") > score("src/c/h/e/e/s/e.txt", "cheese"),
+                   "consecutive");
+        assertTrue(score("src/fondue/dip.txt", "fd") > score("src/xfxd/dip.txt", "fd"),
+                   "word starts");
+        assertTrue(score("cheese/bread.txt", "bread") > score("bread/cheese.txt", "bread"),
+                   "file name");
+    }
+
+    @Test
+    public void narrowing() throws Exception {
+        FileTreeModel model = new FileTreeModel();
+        model.addPath("src/cheese.txt");
+        model.addPath("src/bread.txt");
+        TreePath cheese = leafPath(model, "src/cheese.txt");
+        TreePath bread = leafPath(model, "src/bread.txt");
+
+        FuzzyFilter filter = new FuzzyFilter("ch", null);
+        assertTrue(filter.test(cheese), "ch: cheese");
+        assertFalse(filter.test(bread), "ch: bread");
+
+        filter = new FuzzyFilter("che", filter);
+        assertTrue(filter.test(cheese), "che: cheese");
+        assertFalse(filter.test(bread), "che: bread");
+        assertEquals(filter.scoreOf(bread.getLastPathComponent()), FuzzyFilter.NO_MATCH,
+                     "che: bread score");
+
+        filter = new FuzzyFilter("s", filter);
+        assertTrue(filter.test(bread), "s: bread");
+    }
+
+}
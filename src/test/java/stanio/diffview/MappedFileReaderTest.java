@@ -0,0 +1,102 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+public class MappedFileReaderTest {
+
+    private static final String
+            BASE_CONTENT = "Fromage frais cheesy feet\n"
+                           + "\u0421\u0438\u0440\u0435\u043D\u0435 \u0438 \u043A\u0430\u0448\u043A\u0430\u0432\u0430\u043B \uD83E\uDDC0\n"
+                           + "no newline at end";
+
+    @Test
+    public void readAll() throws Exception {
+        Path file = tempFile(BASE_CONTENT);
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8)) {
+            assertEquals(readAll(reader, 7), BASE_CONTENT, "content");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void singleChars() throws Exception {
+        Path file = tempFile(BASE_CONTENT);
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8)) {
+            assertEquals(readAll(reader, 1), BASE_CONTENT, "content");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readWholeLines() throws Exception {
+        Path file = tempFile(BASE_CONTENT);
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8)) {
+            char[] buf = new char[40];
+
+            int count = reader.read(buf);
+
+            assertTrue(count < buf.length, "partial read");
+            assertEquals(new String(buf, 0, count),
+                    BASE_CONTENT.substring(0, BASE_CONTENT.indexOf('\n') + 1), "first line");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void malformedInputAtEnd() throws Exception {
+        Path file = Files.createTempFile("diff-view", ".diff");
+        Files.write(file, new byte[] { 'a', 'b', (byte) 0xE2, (byte) 0x82 });
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8)) {
+            assertEquals(readAll(reader, 16), "ab\uFFFD", "content");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void markReset() throws Exception {
+        Path file = tempFile(BASE_CONTENT);
+        try (Reader reader = new MappedFileReader(file, StandardCharsets.UTF_8)) {
+            reader.mark(4096);
+            reader.skip(30);
+            reader.reset();
+
+            assertEquals(readAll(reader, 64), BASE_CONTENT, "content");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Path tempFile(String content) throws IOException {
+        Path file = Files.createTempFile("diff-view", ".diff");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String readAll(Reader reader, int bufferSize) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buf = new char[bufferSize];
+        int count;
+        while ((count = reader.read(buf)) != -1) {
+            text.append(buf, 0, count);
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class ReadAheadReaderTest {
+
+    @Test
+    public void readAll() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 100_000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        // More text than all the chunks hold at once
+        try (Reader reader = new ReadAheadReader(new StringReader(text.toString()), null, 3, 1000)) {
+            StringBuilder buf = new StringBuilder();
+            char[] cbuf = new char[700];
+            int count;
+            while ((count = reader.read(cbuf, 0, cbuf.length)) >= 0) {
+                buf.append(cbuf, 0, count);
+            }
+            assertEquals(buf.toString(), text.toString(), "text");
+        }
+    }
+
+    @Test
+    public void sourceError() throws Exception {
+        Reader source = new Reader() {
+            @Override public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Test error");
+            }
+            @Override public void close() {/* no-op */}
+        };
+        try (Reader reader = new ReadAheadReader(source)) {
+            IOException e = expectThrows(IOException.class, () -> reader.read(new char[10]));
+            assertEquals(e.getMessage(), "Test error", "error message");
+        }
+    }
+
+    @Test
+    public void uncheckedSourceError() throws Exception {
+        Reader source = new Reader() {
+            @Override public int read(char[] cbuf, int off, int len) {
+                throw new IllegalStateException("Test error");
+            }
+            @Override public void close() {/* no-op */}
+        };
+        try (Reader reader = new ReadAheadReader(source)) {
+            IOException e = expectThrows(IOException.class, () -> reader.read(new char[10]));
+            assertTrue(e.getCause() instanceof IllegalStateException, "cause: " + e.getCause());
+        }
+    }
+
+    @Test
+    public void interruptWaiting() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        Reader source = new Reader() {
+            @Override public int read(char[] cbuf, int off, int len) throws IOException {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+            @Override public void close() {/* no-op */}
+        };
+        Reader reader = new ReadAheadReader(source);
+        Thread.currentThread().interrupt();
+        try {
+            expectThrows(InterruptedIOException.class, () -> reader.read(new char[10]));
+            assertTrue(Thread.interrupted(), "interrupted status");
+        } finally {
+            reader.close();
+            closed.countDown();
+        }
+        assertTrue(closed.await(1, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing;
+
+import static org.testng.Assert.assertEquals;
+
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.Document;
+
+import org.testng.annotations.Test;
+
+public class LineRulerTest {
+
+    @Test
+    public void numbersFollowSourceLines() throws Exception {
+        JTextPane text = new JTextPane();
+        Document source = text.getDocument();
+        source.insertString(0, "foo\nbar", null);
+        LineRuler ruler = new LineRuler(text);
+        ruler.showLineNumbers();
+        assertEquals(ruler.getText(), "1\n2\n", "initial");
+
+        source.insertString(source.getLength(), "\nbaz\nqux\n", null);
+        SwingUtilities.invokeAndWait(() -> {/* updates posted */});
+        assertEquals(ruler.getText(), "1\n2\n3\n4\n5\n", "appended");
+
+        source.remove(3, source.getLength() - 3);
+        SwingUtilities.invokeAndWait(() -> {/* updates posted */});
+        assertEquals(ruler.getText(), "1\n", "removed");
+    }
+
+    @Test
+    public void followDocumentChange() throws Exception {
+        JTextPane text = new JTextPane();
+        LineRuler ruler = new LineRuler(text);
+        ruler.showLineNumbers();
+        assertEquals(ruler.getText(), "1\n", "initial");
+
+        text.setText("foo\nbar\nbaz");
+        SwingUtilities.invokeAndWait(() -> {/* updates posted */});
+        assertEquals(ruler.getText(), "1\n2\n3\n", "new text");
+    }
+
+}
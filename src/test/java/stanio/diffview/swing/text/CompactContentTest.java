@@ -0,0 +1,169 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import javax.swing.text.AbstractDocument.Content;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.GapContent;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleContext;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CompactContentTest {
+
+    private static final String
+            BASE_CONTENT = "Cheese triangles cottage cheese\n"
+                           + "caerphilly сирене fondue.\n"
+                           + "Say cheese mozzarella cut the cheese";
+
+    private CompactContent content;
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+        content = new CompactContent(0, 4); // 16-char chunks
+    }
+
+    @Test
+    public void appendText() throws Exception {
+        content.insertString(0, BASE_CONTENT.substring(0, 20));
+        content.insertString(20, BASE_CONTENT.substring(20));
+
+        assertEquals(content.length(), BASE_CONTENT.length() + 1, "length");
+        assertEquals(content.getString(0, content.length()),
+                BASE_CONTENT + "\n", "content");
+    }
+
+    @Test(expectedExceptions = BadLocationException.class)
+    public void insertInTheMiddle() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        content.insertString(5, "foo");
+    }
+
+    @Test(expectedExceptions = BadLocationException.class)
+    public void removeText() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        content.remove(0, 5);
+    }
+
+    @Test
+    public void fullSegmentAcrossChunks() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        Segment txt = new Segment();
+
+        content.getChars(10, 40, txt);
+
+        assertEquals(txt.toString(), BASE_CONTENT.substring(10, 50), "chars");
+    }
+
+    @Test
+    public void partialSegmentAcrossChunks() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        Segment txt = new Segment();
+        txt.setPartialReturn(true);
+
+        content.getChars(10, 40, txt);
+
+        assertEquals(txt.toString(), BASE_CONTENT.substring(10, 16), "chars");
+    }
+
+    @Test
+    public void partialSegmentNoCopy() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        Segment txt = new Segment();
+        txt.setPartialReturn(true);
+        content.getChars(40, 5, txt);
+        char[] array = txt.array;
+
+        content.getChars(32, 16, txt);
+
+        assertSame(txt.array, array, "chunk array");
+        assertEquals(txt.toString(), BASE_CONTENT.substring(32, 48), "chars");
+    }
+
+    @Test
+    public void implicitNewline() throws Exception {
+        content.insertString(0, BASE_CONTENT);
+        Segment txt = new Segment();
+
+        content.getChars(BASE_CONTENT.length() - 3, 4, txt);
+
+        assertEquals(txt.toString(), "ese\n", "chars");
+    }
+
+    @Test
+    public void positionsAsGapContent() throws Exception {
+        Content gapContent = new GapContent();
+        int[] offsets = { 0, 1, 10, 20 };
+        Position[] expected = new Position[offsets.length * 2];
+        Position[] actual = new Position[expected.length];
+        int where = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            String str = BASE_CONTENT.substring(where, offsets[i] + 5);
+            gapContent.insertString(where, str);
+            content.insertString(where, str);
+            where += str.length();
+            expected[i * 2] = gapContent.createPosition(offsets[i]);
+            actual[i * 2] = content.createPosition(offsets[i]);
+            expected[i * 2 + 1] = gapContent.createPosition(where);
+            actual[i * 2 + 1] = content.createPosition(where);
+        }
+        content.insertString(where, BASE_CONTENT.substring(where));
+        gapContent.insertString(where, BASE_CONTENT.substring(where));
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(actual[i].getOffset(), expected[i].getOffset(), "position #" + i);
+        }
+    }
+
+    @Test
+    public void documentStructure() throws Exception {
+        DefaultStyledDocument gapDoc = new DefaultStyledDocument();
+        DefaultStyledDocument doc = new DefaultStyledDocument(content, new StyleContext());
+        String[] chunks = { BASE_CONTENT.substring(0, 7),
+                            BASE_CONTENT.substring(7, 40),
+                            BASE_CONTENT.substring(40) };
+        for (String str : chunks) {
+            gapDoc.insertString(gapDoc.getLength(), str, null);
+            doc.insertString(doc.getLength(), str, null);
+        }
+
+        assertEquals(doc.getText(0, doc.getLength()), BASE_CONTENT, "text");
+        Element gapRoot = gapDoc.getDefaultRootElement();
+        Element root = doc.getDefaultRootElement();
+        assertEquals(root.getElementCount(), gapRoot.getElementCount(), "paragraph count");
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Element expected = gapRoot.getElement(i);
+            Element actual = root.getElement(i);
+            assertEquals(actual.getStartOffset(), expected.getStartOffset(), "paragraph start #" + i);
+            assertEquals(actual.getEndOffset(), expected.getEndOffset(), "paragraph end #" + i);
+        }
+    }
+
+    @Test
+    public void documentSegmentRead() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument(content, new StyleContext());
+        doc.insertString(0, BASE_CONTENT, null);
+        DocumentReader reader = new DocumentReader(doc);
+        StringBuilder text = new StringBuilder();
+        char[] buf = new char[7];
+        int count;
+        while ((count = reader.read(buf)) > 0) {
+            text.append(buf, 0, count);
+        }
+
+        assertEquals(text.toString(), BASE_CONTENT, "text");
+        assertTrue(content.length() > (1 << 4), "multiple chunks");
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleContext;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PagedContentTest {
+
+    private static final String
+            BASE_CONTENT = "Cheese triangles cottage cheese\n"
+                           + "caerphilly сирене fondue.\n"
+                           + "Say cheese mozzarella cut the cheese\n";
+
+    private static final String TEXT = BASE_CONTENT + BASE_CONTENT
+                                       + BASE_CONTENT + BASE_CONTENT;
+
+    private PagedContent content;
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+        // 16-char pages, up to two Latin-1 (or one char[]) in memory
+        content = new PagedContent(0, 4, 32);
+        content.insertString(0, TEXT);
+    }
+
+    @Test
+    public void withinMemoryBudget() throws Exception {
+        assertTrue(content.memoryUsed() <= 32, "memory used: " + content.memoryUsed());
+    }
+
+    @Test
+    public void readBackReleasedPages() throws Exception {
+        assertEquals(content.getString(0, content.length()), TEXT + "\n", "content");
+
+        for (int pos = TEXT.length() - 10; pos >= 0; pos -= 10) {
+            assertEquals(content.getString(pos, 10), TEXT.substring(pos, pos + 10),
+                         "chars at " + pos);
+        }
+        assertTrue(content.memoryUsed() <= 32, "memory used: " + content.memoryUsed());
+    }
+
+    @Test
+    public void partialSegmentAfterRelease() throws Exception {
+        Segment txt = new Segment();
+        txt.setPartialReturn(true);
+        content.getChars(3, 10, txt);
+
+        Segment other = new Segment();
+        content.getChars(TEXT.length() - 50, 50, other); // Releases the first page
+        content.getChars(3, 10, other);
+
+        assertEquals(txt.toString(), TEXT.substring(3, 13), "chars");
+        assertEquals(other.toString(), TEXT.substring(3, 13), "chars read back");
+    }
+
+    @Test
+    public void documentSegment() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument(
+                new PagedContent(0, 4, 32), new StyleContext());
+        doc.insertString(0, TEXT, null);
+        DocumentSegment segment = new DocumentSegment(doc);
+        StringBuilder buf = new StringBuilder();
+
+        for (int i = 0; i < TEXT.length(); i++) {
+            buf.append((char) segment.getChar(i));
+        }
+
+        assertEquals(buf.toString(), TEXT, "document text");
+    }
+
+}
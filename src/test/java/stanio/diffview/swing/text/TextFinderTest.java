@@ -0,0 +1,104 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Random;
+
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyleContext;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class TextFinderTest {
+
+    private static final String
+            TEXT = "Cheese triangles cottage cheese\n"
+                   + "caerphilly сирене fondue.\n"
+                   + "Say cheese mozzarella cut the cheese";
+
+    @DataProvider(name = "patterns")
+    public static Object[][] patterns() {
+        return new Object[][] {
+            { "cheese", 25 },
+            { "e", 0 },
+            { "сирене", 0 },
+            { "the cheese", 0 },
+            { "fondue.\nSay", 10 },
+            { "cheddar", 0 },
+            { TEXT, 0 },
+            { TEXT + "!", 0 }
+        };
+    }
+
+    @Test(dataProvider = "patterns")
+    public void sameAsIndexOf(String pattern, int from) throws Exception {
+        TextFinder finder = new TextFinder(pattern, false);
+
+        assertEquals(finder.indexOf(TEXT, from, TEXT.length()),
+                     TEXT.indexOf(pattern, from), pattern);
+    }
+
+    @Test
+    public void ignoreCase() throws Exception {
+        TextFinder finder = new TextFinder("CHEESE", true);
+
+        assertEquals(finder.indexOf(TEXT, 0, TEXT.length()), 0, "first");
+        assertEquals(finder.indexOf(TEXT, 1, TEXT.length()), 25, "second");
+        assertEquals(new TextFinder("СИРЕНЕ", true)
+                .indexOf(TEXT, 0, TEXT.length()), TEXT.indexOf("сирене"), "non-ASCII");
+    }
+
+    @Test
+    public void withinRange() throws Exception {
+        TextFinder finder = new TextFinder("cheese", false);
+
+        assertEquals(finder.indexOf(TEXT, 0, 30), -1, "before end");
+        assertEquals(finder.indexOf(TEXT, 0, 31), 25, "at end");
+    }
+
+    @Test
+    public void sharedLowByte() throws Exception {
+        // 'a' (0x61) and 'š' share the low byte
+        String text = "xxašxxxšaxx";
+        TextFinder finder = new TextFinder("ša", false);
+
+        assertEquals(finder.indexOf(text, 0, text.length()), text.indexOf("ša"));
+    }
+
+    @Test
+    public void randomText() throws Exception {
+        Random random = new Random(42);
+        char[] chars = new char[10_000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(3));
+        }
+        String text = new String(chars);
+        for (int i = 0; i < 100; i++) {
+            int start = random.nextInt(text.length() - 10);
+            String pattern = text.substring(start, start + 1 + random.nextInt(8));
+            TextFinder finder = new TextFinder(pattern, false);
+            int from = random.nextInt(text.length());
+
+            assertEquals(finder.indexOf(text, from, text.length()),
+                         text.indexOf(pattern, from), pattern + " from " + from);
+        }
+    }
+
+    @Test
+    public void documentSegmentAcrossChunks() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument(
+                new CompactContent(0, 4), new StyleContext());
+        doc.insertString(0, TEXT, null);
+        DocumentSegment segment = new DocumentSegment(doc);
+        TextFinder finder = new TextFinder("the cheese", false);
+
+        assertEquals(finder.indexOf(segment, 0, segment.length()),
+                     TEXT.indexOf("the cheese"));
+    }
+
+}
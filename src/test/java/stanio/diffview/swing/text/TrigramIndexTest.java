@@ -0,0 +1,150 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.text;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class TrigramIndexTest {
+
+    private static final String[] WORDS = {
+        "cheese", "triangles", "cottage", "caerphilly", "сирене", "fondue",
+        "Say", "mozzarella", "cut", "the", "Cheddar", "+++", "@@", "-1,7"
+    };
+
+    private String text;
+
+    private TrigramIndex index;
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+        Random random = new Random(42);
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < 20 * TrigramIndex.BLOCK_CHARS) {
+            int words = random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                if (i > 0) buf.append(' ');
+                buf.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (random.nextInt(50) == 0) {
+                buf.append("unique").append(buf.length());
+            }
+            buf.append('\n');
+        }
+        text = buf.toString();
+
+        index = new TrigramIndex();
+        try (Writer out = index.writer()) {
+            char[] chars = text.toCharArray();
+            for (int pos = 0, step = 1; pos < chars.length; pos += step, step = step * 3 % 1000 + 1) {
+                out.write(chars, pos, Math.min(step, chars.length - pos));
+            }
+        }
+    }
+
+    @DataProvider(name = "queries")
+    public static Object[][] queries() {
+        return new Object[][] {
+            { "cheese" },
+            { "CHEESE" },
+            { "сирЕне" },
+            { "the cheese" },
+            { "unique" },
+            { "unique7" },
+            { "@@ -1,7" },
+            { "Camembert" }
+        };
+    }
+
+    @Test
+    public void blocksCoverText() throws Exception {
+        assertTrue(index.isComplete(), "complete");
+        assertTrue(index.getBlockCount() > 10, "block count: " + index.getBlockCount());
+        assertEquals(index.getBlockStart(0), 0, "first block start");
+        assertEquals(index.getBlockEnd(index.getBlockCount() - 1), text.length(),
+                     "last block end");
+        for (int b = 1; b < index.getBlockCount(); b++) {
+            assertEquals(index.getBlockStart(b), index.getBlockEnd(b - 1), "block " + b);
+            assertEquals(text.charAt(index.getBlockStart(b) - 1), '\n',
+                         "block " + b + " at line start");
+        }
+    }
+
+    @Test(dataProvider = "queries")
+    public void candidatesContainMatches(String query) throws Exception {
+        int[] candidates = index.candidateBlocks(query);
+        String foldedText = text.toLowerCase(Locale.ROOT);
+        String foldedQuery = query.toLowerCase(Locale.ROOT);
+
+        int matchingBlocks = 0;
+        for (int b = 0; b < index.getBlockCount(); b++) {
+            String block = foldedText.substring(index.getBlockStart(b), index.getBlockEnd(b));
+            if (block.contains(foldedQuery)) {
+                matchingBlocks++;
+                assertTrue(Arrays.binarySearch(candidates, b) >= 0,
+                           "block " + b + " in " + Arrays.toString(candidates));
+            }
+        }
+        for (int i = 1; i < candidates.length; i++) {
+            assertTrue(candidates[i - 1] < candidates[i], "ascending: " + i);
+        }
+        if (matchingBlocks == 0) {
+            assertEquals(candidates.length, 0, "candidates");
+        }
+    }
+
+    @Test
+    public void narrowsDownBlocks() throws Exception {
+        int pos = text.indexOf("unique");
+        String query = text.substring(pos, text.indexOf('\n', pos));
+
+        assertEquals(index.candidateBlocks(query).length, 1, query);
+    }
+
+    @Test
+    public void notApplicable() throws Exception {
+        assertNull(index.candidateBlocks("ch"), "short query");
+        assertNull(index.candidateBlocks("cheese\ncut"), "query with newline");
+        assertNull(new TrigramIndex().candidateBlocks("cheese"), "incomplete index");
+    }
+
+    @Test
+    public void multipleSegments() throws Exception {
+        TrigramIndex segmented = new TrigramIndex();
+        StringBuilder buf = new StringBuilder();
+        // Unique trigrams in every line: enough pairs for several segments
+        for (int i = 0; buf.length() < 3 * TrigramIndex.SEGMENT_PAIRS; i++) {
+            buf.append(Integer.toString(i * 7919, 36)).append(" cheese ")
+               .append(Integer.toString(i, 36)).append('\n');
+        }
+        String longText = buf.toString();
+        try (Writer out = segmented.writer()) {
+            out.write(longText);
+        }
+        String query = " cheese " + Integer.toString(123_456, 36);
+        int pos = longText.indexOf(query);
+
+        int[] candidates = segmented.candidateBlocks(query);
+
+        assertFalse(candidates.length == 0, "found");
+        boolean found = false;
+        for (int b : candidates) {
+            found |= segmented.getBlockStart(b) <= pos && pos < segmented.getBlockEnd(b);
+        }
+        assertTrue(found, "block of " + pos + " in " + Arrays.toString(candidates));
+    }
+
+}
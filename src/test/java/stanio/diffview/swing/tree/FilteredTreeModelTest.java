@@ -0,0 +1,147 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.swing.tree;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FilteredTreeModelTest {
+
+    private FilteredTreeModel model;
+
+    private List<String> structureChanges;
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode("<root>");
+        for (String dir : new String[] { "cheese", "bread" }) {
+            DefaultMutableTreeNode dirNode = new DefaultMutableTreeNode(dir);
+            for (int i = 0; i < 3; i++) {
+                dirNode.add(new DefaultMutableTreeNode(dir + i));
+            }
+            root.add(dirNode);
+        }
+        model = new FilteredTreeModel(new DefaultTreeModel(root));
+        structureChanges = new ArrayList<>();
+        model.addTreeModelListener(new TreeModelListener() {
+            @Override public void treeStructureChanged(TreeModelEvent event) {
+                structureChanges.add(event.getTreePath()
+                                          .getLastPathComponent().toString());
+            }
+            @Override public void treeNodesRemoved(TreeModelEvent event) {/* */}
+            @Override public void treeNodesInserted(TreeModelEvent event) {/* */}
+            @Override public void treeNodesChanged(TreeModelEvent event) {/* */}
+        });
+    }
+
+    private void filterLater(Predicate<TreePath> filter) throws Exception {
+        SwingUtilities.invokeAndWait(() -> model.filterLater(filter));
+        AtomicBoolean filtering = new AtomicBoolean(true);
+        for (int i = 0; i < 500 && filtering.get(); i++) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(() -> filtering.set(model.isFiltering()));
+        }
+        assertTrue(!filtering.get(), "filtering done");
+    }
+
+    private static Predicate<TreePath> nameContains(String text) {
+        return path -> path.getLastPathComponent().toString().contains(text);
+    }
+
+    private List<String> visibleChildren(Object parent) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0, count = model.getChildCount(parent); i < count; i++) {
+            names.add(model.getChild(parent, i).toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void filterInBackground() throws Exception {
+        filterLater(nameContains("1"));
+
+        Object root = model.getRoot();
+        assertEquals(visibleChildren(root), List.of("cheese", "bread"), "root children");
+        assertEquals(visibleChildren(model.getChild(root, 0)), List.of("cheese1"), "cheese children");
+        assertEquals(visibleChildren(model.getChild(root, 1)), List.of("bread1"), "bread children");
+    }
+
+    @Test
+    public void notifyChangedSubtreesOnly() throws Exception {
+        filterLater(nameContains("cheese"));
+        assertEquals(structureChanges, List.of("<root>"), "bread hidden");
+
+        structureChanges.clear();
+        filterLater(nameContains("cheese2"));
+        assertEquals(structureChanges, List.of("cheese"), "cheese children changed");
+
+        structureChanges.clear();
+        filterLater(nameContains("e2"));
+        assertEquals(structureChanges, List.of(), "no change");
+
+        structureChanges.clear();
+        filterLater(nameContains("zzz"));
+        assertEquals(structureChanges, List.of("<root>"), "nothing matched");
+        assertEquals(model.getChildCount(model.getRoot()), 0, "root children");
+    }
+
+    @Test
+    public void cancelFiltering() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            model.filterLater(nameContains("bread"));
+            model.cancelFiltering();
+        });
+        Thread.sleep(50);
+        SwingUtilities.invokeAndWait(() -> {/* done() */});
+
+        assertEquals(visibleChildren(model.getRoot()), List.of("cheese", "bread"), "root children");
+        assertEquals(structureChanges, List.of(), "structure changes");
+    }
+
+    @Test
+    public void visibleChildIndex() throws Exception {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode("<root>");
+        DefaultMutableTreeNode dir = new DefaultMutableTreeNode("vendor");
+        for (int i = 0; i < 20_000; i++) {
+            dir.add(new DefaultMutableTreeNode("file" + i));
+        }
+        root.add(dir);
+        DefaultTreeModel source = new DefaultTreeModel(root);
+        FilteredTreeModel filtered = new FilteredTreeModel(source);
+        filtered.filter(path -> path.getLastPathComponent().toString().endsWith("3"));
+        Object parent = filtered.getChild(filtered.getRoot(), 0);
+
+        assertEquals(filtered.getChildCount(parent), 2_000, "visible count");
+        for (int i = 0; i < 2_000; i++) {
+            Object child = filtered.getChild(parent, i);
+            assertEquals(child.toString(), "file" + (i * 10 + 3), "child " + i);
+            assertEquals(filtered.getIndexOfChild(parent, child), i, "index of " + child);
+        }
+
+        source.removeNodeFromParent((DefaultMutableTreeNode) dir.getChildAt(3));
+        SwingUtilities.invokeAndWait(() -> {/* scheduled filter */});
+
+        assertEquals(filtered.getChildCount(parent), 1_999, "visible count after remove");
+        assertEquals(filtered.getChild(parent, 0).toString(), "file13", "first child after remove");
+        assertEquals(filtered.getIndexOfChild(parent, filtered.getChild(parent, 1)), 1,
+                     "index after remove");
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static stanio.diffview.udiff.UDiffBuilderTest.assertSameIndex;
+import static stanio.diffview.udiff.UDiffBuilderTest.describe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.swing.text.Element;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class LineIndexCacheTest {
+
+    private Path tempDir;
+
+    private Path diffFile;
+
+    private String text;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("diff-view-test");
+        System.setProperty(LineIndexCache.CACHE_DIR_PROPERTY,
+                           tempDir.resolve("cache").toString());
+
+        String resource;
+        try (InputStream in = getClass().getResourceAsStream("git.diff")) {
+            resource = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < LineIndexCache.MIN_FILE_SIZE) {
+            buf.append(resource);
+        }
+        text = buf.append("no newline at end").toString();
+        diffFile = tempDir.resolve("large.diff");
+        Files.write(diffFile, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        System.clearProperty(LineIndexCache.CACHE_DIR_PROPERTY);
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder())
+                 .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        UDiffDocument parsed = read(null);
+        LineIndexCache.write(diffFile, parsed.getLineIndex());
+        assertTrue(Files.isRegularFile(LineIndexCache.indexFile(diffFile)), "index file");
+
+        LineIndex cached = LineIndexCache.read(diffFile);
+        assertNotNull(cached, "cached index");
+        assertSameIndex(cached, parsed.getLineIndex());
+    }
+
+    @Test
+    public void replaySameAsParse() throws Exception {
+        UDiffDocument parsed = read(null);
+        UDiffDocument replayed = read(parsed.getLineIndex());
+
+        assertEquals(replayed.getText(0, replayed.getLength()), text, "text");
+        Element expectedRoot = parsed.getDefaultRootElement();
+        Element root = replayed.getDefaultRootElement();
+        assertEquals(root.getElementCount(), expectedRoot.getElementCount(), "line count");
+        for (int i = 0; i < root.getElementCount(); i++) {
+            assertEquals(describe(root.getElement(i)),
+                         describe(expectedRoot.getElement(i)), "line " + (i + 1));
+        }
+        assertSameIndex(replayed.getLineIndex(), parsed.getLineIndex());
+        assertNull(replayed.getProperty(UDiffEditorKit.INDEX_PROPERTY), "index property");
+    }
+
+    @Test
+    public void replayMapped() throws Exception {
+        UDiffDocument parsed = read(null);
+        LineIndexCache.write(diffFile, parsed.getLineIndex());
+        LineIndex cached = LineIndexCache.read(diffFile);
+        assertNotNull(cached, "cached index");
+        UDiffDocument replayed = read(cached);
+
+        assertEquals(replayed.getText(0, replayed.getLength()), text, "text");
+        assertSameIndex(replayed.getLineIndex(), parsed.getLineIndex());
+    }
+
+    @Test
+    public void staleIndex() throws Exception {
+        Path stale = Files.copy(diffFile, tempDir.resolve("stale.diff"));
+        LineIndexCache.write(stale, read(null).getLineIndex());
+        assertNotNull(LineIndexCache.read(stale), "cached index");
+        FileTime lastModified = Files.getLastModifiedTime(stale);
+
+        Files.write(stale, new byte[] { '\n' }, StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(stale, lastModified);
+
+        assertNull(LineIndexCache.read(stale), "stale index");
+    }
+
+    @Test
+    public void smallFileNotCached() throws Exception {
+        Path small = tempDir.resolve("small.diff");
+        Files.write(small, "--- a\n+++ b\n".getBytes(StandardCharsets.UTF_8));
+        LineIndexCache.write(small, new LineIndex());
+
+        assertTrue(Files.notExists(LineIndexCache.indexFile(small)), "index file");
+        assertNull(LineIndexCache.read(small), "cached index");
+    }
+
+    private UDiffDocument read(LineIndex index) throws Exception {
+        UDiffEditorKit kit = new UDiffEditorKit();
+        kit.setParallelThreshold(-1, 0);
+        UDiffDocument document = (UDiffDocument) kit.createDefaultDocument();
+        document.putProperty(UDiffEditorKit.INDEX_PROPERTY, index);
+        kit.read(new StringReader(text), document, 0);
+        return document;
+    }
+
+}
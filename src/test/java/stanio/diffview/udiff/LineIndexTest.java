@@ -0,0 +1,123 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+import stanio.diffview.udiff.ParseResult.Type;
+
+public class LineIndexTest {
+
+    @Test
+    public void growAcrossChunks() throws Exception {
+        LineIndex index = new LineIndex();
+        int count = LineIndex.CHUNK_SIZE * 2 + 3;
+        index.add(Type.MESSAGE, 0, 0);
+        index.addFile("foo.txt");
+        for (int i = 1; i < count; i++) {
+            index.add(Type.CONTEXT, i, i + 10);
+        }
+
+        assertEquals(index.size(), count, "size");
+        assertEquals(index.getType(0), Type.MESSAGE, "type 0");
+        assertEquals(index.getFileIndex(0), -1, "file 0");
+        int last = count - 1;
+        assertEquals(index.getType(last), Type.CONTEXT, "type last");
+        assertEquals(index.getFromLine(last), last, "from-line last");
+        assertEquals(index.getToLine(last), last + 10, "to-line last");
+        assertEquals(index.getFileIndex(last), 0, "file last");
+        assertNull(index.getType(count), "type past end");
+    }
+
+    @Test
+    public void appendBatches() throws Exception {
+        LineIndex index = new LineIndex();
+        LineIndex batch = new LineIndex();
+        batch.add(Type.MESSAGE, 0, 0);
+        batch.addFile(null);
+        batch.add(Type.FROM_FILE, 0, 0);
+        batch.setFile("foo.txt");
+        batch.add(Type.TO_FILE, 0, 0);
+        index.addAll(batch);
+
+        batch.clear();
+        batch.add(Type.ADDED, 0, 1);
+        batch.addFile("bar.txt");
+        batch.add(Type.FROM_FILE, 0, 0);
+        index.addAll(batch);
+
+        assertEquals(index.size(), 5, "size");
+        assertEquals(index.getFileCount(), 2, "file count");
+        assertEquals(index.getFile(0), "foo.txt", "file 0");
+        assertEquals(index.getFileLine(0), 1, "file 0 line");
+        assertEquals(index.getFile(1), "bar.txt", "file 1");
+        assertEquals(index.getFileLine(1), 4, "file 1 line");
+        assertEquals(index.getFileIndex(0), -1, "line 0 file");
+        assertEquals(index.getFileIndex(3), 0, "line 3 file");
+        assertEquals(index.getToLine(3), 1, "line 3 to-line");
+        assertEquals(index.getFileIndex(4), 1, "line 4 file");
+        assertEquals(index.indexOfFile("foo.txt"), 0, "foo.txt entry");
+        assertEquals(index.indexOfFile("bar.txt"), 1, "bar.txt entry");
+        assertEquals(index.indexOfFile("baz.txt"), -1, "baz.txt entry");
+    }
+
+    @Test
+    public void shareMappedLines() throws Exception {
+        ByteBuffer lines = ByteBuffer.allocate(2 * 9);
+        lines.put((byte) Type.FROM_FILE.ordinal())
+             .put((byte) Type.CONTEXT.ordinal())
+             .putInt(0).putInt(7)
+             .putInt(0).putInt(8);
+        LineIndex mapped = new LineIndex(lines, 2);
+        mapped.addFile("foo.txt", 0);
+        mapped.add(Type.ADDED, 0, 9);
+
+        LineIndex index = new LineIndex();
+        index.addAll(mapped);
+        index.add(Type.ADDED, 0, 10);
+
+        assertEquals(index.size(), 4, "size");
+        assertEquals(index.getType(1), Type.CONTEXT, "mapped type");
+        assertEquals(index.getFromLine(1), 7, "mapped from-line");
+        assertEquals(index.getToLine(1), 8, "mapped to-line");
+        assertEquals(index.getType(2), Type.ADDED, "appended type");
+        assertEquals(index.getToLine(2), 9, "appended to-line");
+        assertEquals(index.getToLine(3), 10, "added to-line");
+        assertEquals(index.getFileIndex(3), 0, "added line file");
+
+        LineIndex copy = new LineIndex();
+        copy.add(Type.MESSAGE, 0, 0);
+        copy.addAll(index);
+        assertEquals(copy.size(), 5, "copy size");
+        assertEquals(copy.getFromLine(2), 7, "copied from-line");
+        assertEquals(copy.getFileLine(0), 1, "copied file line");
+    }
+
+    @Test
+    public void findFileEntry() throws Exception {
+        LineIndex index = new LineIndex();
+        for (int entry = 0; entry < 100; entry++) {
+            index.addFile("file" + entry);
+            for (int i = 0; i <= entry % 3; i++) {
+                index.add(Type.CONTEXT, i + 1, i + 1);
+            }
+        }
+
+        int line = 0;
+        for (int entry = 0; entry < 100; entry++) {
+            assertEquals(index.getFileLine(entry), line, "entry " + entry + " line");
+            for (int i = 0; i <= entry % 3; i++, line++) {
+                assertEquals(index.getFileIndex(line), entry, "line " + line + " file");
+            }
+            assertEquals(index.indexOfFile("file" + entry), entry, "file" + entry);
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ package stanio.diffview.udiff;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.testng.Assert.assertEquals;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -24,6 +25,38 @@ public class LineReaderTest {
         assertThat("text lines", lines, contains("Foo\n", "Bar\r\n", "Baz\rQux"));
     }
 
+    @Test
+    public void lineSlices() throws Exception {
+        LineReader reader = new LineReader(new StringReader("Foo\nBar\r\nBaz"));
+        List<String> lines = new ArrayList<>();
+        while (reader.next()) {
+            String line = reader.line().toString();
+            assertEquals(new String(reader.buffer(), reader.lineStart(),
+                    reader.lineEnd() - reader.lineStart()), line, "buffer slice");
+            lines.add(line);
+        }
+        assertThat("text lines", lines, contains("Foo\n", "Bar\r\n", "Baz"));
+    }
+
+    @Test
+    public void longLines() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 100_000) {
+            longLine.append("0123456789abcdef");
+        }
+        longLine.append('\n');
+        String text = "Foo\n" + longLine + longLine + "Bar";
+        // Up to 1000 chars at a time
+        Reader source = new StringReader(text) {
+            @Override public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1000));
+            }
+        };
+        List<String> lines = readAllLines(source);
+        assertThat("text lines", lines, contains("Foo\n",
+                longLine.toString(), longLine.toString(), "Bar"));
+    }
+
     private List<String> readAllLines(Reader source) throws IOException {
         LineReader reader = new LineReader(source);
         List<String> list = new ArrayList<>();
@@ -0,0 +1,88 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.text.Element;
+
+import org.testng.annotations.Test;
+
+public class ParallelParserTest {
+
+    @Test
+    public void sameAsSequential() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(readText("git.diff"))
+                // "Index: " following a "diff " line is a message
+                .append("diff -u old new\n")
+                .append(readText("svn.diff"))
+                .append(readText("hg.diff"));
+        }
+        text.append("no newline at end");
+
+        assertSameDocument(parseParallel(text.toString()),
+                           parseSequential(text.toString()));
+    }
+
+    @Test
+    public void continueSequentialParse() throws Exception {
+        String text = readText("git.diff") + readText("hg.diff") + readText("svn.diff");
+
+        UDiffEditorKit kit = new UDiffEditorKit();
+        kit.setParallelThreshold(1000, 100);
+        UDiffDocument document = new UDiffDocument();
+        kit.read(new StringReader(text), document, 0);
+
+        assertSameDocument(document, parseSequential(text));
+    }
+
+    private static UDiffDocument parseParallel(String text) throws Exception {
+        UDiffDocument document = new UDiffDocument();
+        document.setReadParser(new UDiffParser());
+        LineReader lines = new LineReader(new StringReader(text));
+        lines.next();
+        new ParallelParser(document, 1).parse(lines, new UDiffParser());
+        document.setReadParser(null);
+        return document;
+    }
+
+    private static UDiffDocument parseSequential(String text) throws Exception {
+        UDiffEditorKit kit = new UDiffEditorKit();
+        kit.setParallelThreshold(-1, 0);
+        UDiffDocument document = new UDiffDocument();
+        kit.read(new StringReader(text), document, 0);
+        return document;
+    }
+
+    private static void assertSameDocument(UDiffDocument actual,
+                                           UDiffDocument expected)
+            throws Exception {
+        assertEquals(actual.getText(0, actual.getLength()),
+                     expected.getText(0, expected.getLength()), "text");
+        Element expectedRoot = expected.getDefaultRootElement();
+        Element root = actual.getDefaultRootElement();
+        assertEquals(root.getElementCount(), expectedRoot.getElementCount(), "line count");
+        for (int i = 0; i < root.getElementCount(); i++) {
+            assertEquals(UDiffBuilderTest.describe(root.getElement(i)),
+                         UDiffBuilderTest.describe(expectedRoot.getElement(i)),
+                         "line " + (i + 1));
+        }
+        UDiffBuilderTest.assertSameIndex(actual.getLineIndex(), expected.getLineIndex());
+    }
+
+    private static String readText(String resource) throws IOException {
+        try (InputStream in = ParallelParserTest.class.getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+import org.testng.annotations.Test;
+
+public class SplitDiffTest {
+
+    private static final String DIFF = "--- a/foo.txt\n"
+            + "+++ b/foo.txt\n"
+            + "@@ -1,4 +1,4 @@ section\n"
+            + " one\n"
+            + "-two\n"
+            + "-three\n"
+            + "+2\n"
+            + " four\n"
+            + "+five\n";
+
+    @Test
+    public void alignedSides() throws Exception {
+        UDiffDocument source = new UDiffDocument();
+        source.setReadParser(new UDiffParser());
+        source.insertString(0, DIFF, null);
+        source.setReadParser(null);
+
+        LineIndex lines = source.getLineIndex();
+        SplitDiff split = SplitDiff.build(source, 0, lines.size());
+        UDiffDocument left = split.getLeft();
+        UDiffDocument right = split.getRight();
+
+        assertEquals(lineTexts(left), "--- a/foo.txt|+++ b/foo.txt|@@ -1,4 +1,4 @@ section"
+                + "|one|two|three|four||", "left");
+        assertEquals(lineTexts(right), "--- a/foo.txt|+++ b/foo.txt|@@ -1,4 +1,4 @@ section"
+                + "|one|2||four|five|", "right");
+
+        LineIndex leftLines = left.getLineIndex();
+        LineIndex rightLines = right.getLineIndex();
+        assertEquals(leftLines.size(), rightLines.size(), "line count");
+        assertEquals(leftLines.getFromLine(4), 2, "left from-line");
+        assertEquals(leftLines.getToLine(4), 0, "left to-line");
+        assertEquals(rightLines.getToLine(4), 2, "right to-line");
+        assertEquals(rightLines.getType(5), ParseResult.Type.MESSAGE, "filler");
+        assertEquals(leftLines.getFileCount(), 1, "file entries");
+        assertEquals(rightLines.getFile(0), lines.getFile(0), "file path");
+    }
+
+    private static String lineTexts(Document doc) throws BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < root.getElementCount() - 1; i++) {
+            Element line = root.getElement(i);
+            if (i > 0) buf.append('|');
+            buf.append(doc.getText(line.getStartOffset(),
+                    line.getEndOffset() - line.getStartOffset() - 1));
+        }
+        return buf.append('|').toString();
+    }
+
+}
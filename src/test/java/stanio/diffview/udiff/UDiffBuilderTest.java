@@ -0,0 +1,156 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Element;
+import javax.swing.text.Style;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class UDiffBuilderTest {
+
+    @DataProvider(name = "corpus")
+    public static Object[][] corpus() {
+        return new Object[][] {
+            { "git.diff", 5 },
+            { "svn.diff", 3 },
+            { "hg.diff", 1 },
+            { "git.diff", UDiffBuilder.BATCH_LINES }
+        };
+    }
+
+    @Test(dataProvider = "corpus")
+    public void sameAsInsertString(String resource, int batchLines) throws Exception {
+        String text = readText(resource) + "no newline at end";
+        UDiffDocument expected = new UDiffDocument();
+        expected.setReadParser(new UDiffParser());
+        for (int pos = 0; pos < text.length(); pos += 100) {
+            expected.insertString(pos,
+                    text.substring(pos, Math.min(pos + 100, text.length())), null);
+        }
+        expected.setReadParser(null);
+
+        UDiffDocument document = new UDiffDocument();
+        UDiffParser parser = new UDiffParser();
+        document.setReadParser(parser);
+        UDiffBuilder builder = new UDiffBuilder(document, parser, batchLines);
+        LineReader lines = new LineReader(new StringReader(text));
+        String tail = null;
+        String line;
+        while ((line = lines.nextLine()) != null) {
+            if (line.endsWith("\n")) {
+                builder.addLine(line);
+            } else {
+                tail = line;
+            }
+        }
+        builder.finish(tail);
+        document.setReadParser(null);
+
+        assertEquals(document.getText(0, document.getLength()), text, "text");
+        Element expectedRoot = expected.getDefaultRootElement();
+        Element root = document.getDefaultRootElement();
+        assertEquals(root.getElementCount(), expectedRoot.getElementCount(), "line count");
+        for (int i = 0; i < root.getElementCount(); i++) {
+            assertEquals(describe(root.getElement(i)),
+                         describe(expectedRoot.getElement(i)),
+                         resource + ":" + (i + 1));
+        }
+        assertSameIndex(document.getLineIndex(), expected.getLineIndex());
+    }
+
+    @Test
+    public void firstBatchAppendedRightAway() throws Exception {
+        UDiffDocument document = new UDiffDocument();
+        UDiffParser parser = new UDiffParser();
+        document.setReadParser(parser);
+        UDiffBuilder builder = new UDiffBuilder(document, parser);
+
+        for (int i = 0; i < UDiffBuilder.FIRST_BATCH_LINES; i++) {
+            builder.addLine("line " + i + "\n");
+        }
+
+        assertEquals(document.getDefaultRootElement().getElementCount(),
+                     UDiffBuilder.FIRST_BATCH_LINES + 1, "paragraph count");
+    }
+
+    private static String readText(String resource) throws IOException {
+        try (InputStream in = UDiffBuilderTest.class.getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static void assertSameIndex(LineIndex actual, LineIndex expected) {
+        assertEquals(actual.size(), expected.size(), "indexed lines");
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(describe(actual, i), describe(expected, i), "line " + (i + 1));
+        }
+        assertEquals(actual.getFileCount(), expected.getFileCount(), "file entries");
+        for (int i = 0; i < actual.getFileCount(); i++) {
+            assertEquals(actual.getFile(i), expected.getFile(i), "file " + i);
+            assertEquals(actual.getFileLine(i), expected.getFileLine(i), "file line " + i);
+            String path = actual.getFile(i);
+            if (path != null) {
+                assertEquals(actual.indexOfFile(path), expected.indexOfFile(path), path);
+            }
+        }
+    }
+
+    private static String describe(LineIndex index, int line) {
+        return index.getType(line) + " " + index.getFromLine(line) + " "
+                + index.getToLine(line) + " #" + index.getFileIndex(line);
+    }
+
+    /**
+     * Adjacent leaves with equal attributes are described as one run, as
+     * the way they get split depends on the insert boundaries.
+     */
+    static String describe(Element paragraph) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(paragraph.getStartOffset()).append('-')
+                .append(paragraph.getEndOffset()).append(' ')
+                .append(describe(paragraph.getAttributes()));
+        String runAttrs = null;
+        for (int i = 0; i < paragraph.getElementCount(); i++) {
+            Element leaf = paragraph.getElement(i);
+            String attrs = describe(leaf.getAttributes());
+            if (!attrs.equals(runAttrs)) {
+                buf.append("\n  ").append(leaf.getStartOffset())
+                        .append(' ').append(attrs);
+                runAttrs = attrs;
+            }
+        }
+        return buf.toString();
+    }
+
+    private static String describe(AttributeSet attrs) {
+        List<String> list = new ArrayList<>();
+        for (Enumeration<?> names = attrs.getAttributeNames();
+                names.hasMoreElements(); ) {
+            Object name = names.nextElement();
+            Object value = attrs.getAttribute(name);
+            if (value instanceof Style) {
+                value = ((Style) value).getName();
+            }
+            list.add(name + "=" + value);
+        }
+        Collections.sort(list);
+        return list.toString();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import stanio.diffview.swing.text.DocumentSegment;
+import stanio.diffview.udiff.ParseResult.Type;
+
+public class UDiffParserTest {
+
+    @DataProvider(name = "corpus")
+    public static Object[][] corpus() {
+        return new Object[][] {
+            { "git.diff" },
+            { "svn.diff" },
+            { "hg.diff" }
+        };
+    }
+
+    @Test(dataProvider = "corpus")
+    public void sameAsRegexParser(String resource) throws Exception {
+        List<String> lines = readLines(resource);
+        UDiffParser parser = new UDiffParser(false);
+        UDiffParser regexParser = new UDiffParser(true);
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            parser.update(line);
+            regexParser.update(line);
+            assertEquals(describe(parser), describe(regexParser),
+                    resource + ":" + (i + 1) + ": " + line.trim());
+        }
+    }
+
+    @Test(dataProvider = "corpus")
+    public void documentSegmentInput(String resource) throws Exception {
+        List<String> lines = readLines(resource);
+        Document doc = new DefaultStyledDocument();
+        doc.insertString(0, String.join("", lines), null);
+        DocumentSegment segment = new DocumentSegment(doc);
+        UDiffParser parser = new UDiffParser(false);
+        UDiffParser stringParser = new UDiffParser(false);
+
+        int offset = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            segment.update(offset, offset + line.length());
+            parser.update(segment);
+            stringParser.update(line);
+            assertEquals(describe(parser), describe(stringParser),
+                    resource + ":" + (i + 1) + ": " + line.trim());
+            offset += line.length();
+        }
+    }
+
+    @Test
+    public void hunkHeaderNumbers() {
+        UDiffParser parser = new UDiffParser(false);
+
+        parser.update("@@ -12,7 +15 @@ label\n");
+
+        assertEquals(parser.getType(), Type.HUNK, "type");
+        assertEquals(parser.getFromLine(), 11, "from line");
+        assertEquals(parser.getToLine(), 14, "to line");
+        assertEquals(parser.getTermEnd(), 15, "term end");
+
+        parser.update(" context\n");
+        parser.update("+added\n");
+        parser.update("\\ No newline at end of file\n");
+
+        assertEquals(parser.getType(), Type.MESSAGE, "type");
+    }
+
+    @Test
+    public void malformedHunkHeader() {
+        UDiffParser parser = new UDiffParser(false);
+
+        parser.update("@@ -1,2 +3,4@@\n");
+
+        assertEquals(parser.getType(), Type.MESSAGE, "type");
+    }
+
+    private static List<String> readLines(String resource) throws IOException {
+        try (Reader source = new InputStreamReader(UDiffParserTest.class
+                .getResourceAsStream(resource), StandardCharsets.UTF_8)) {
+            LineReader reader = new LineReader(source);
+            List<String> list = new ArrayList<>();
+            String line;
+            while ((line = reader.nextLine()) != null) {
+                list.add(line);
+            }
+            return list;
+        }
+    }
+
+    private static String describe(ParseResult result) {
+        return result.getType()
+                + " from: " + result.getFromLine()
+                + ", to: " + result.getToLine()
+                + ", term: " + result.getTermStart() + "-" + result.getTermEnd();
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.testng.annotations.Test;
+
+public class UDiffPrinterTest {
+
+    private static final String DIFF = "--- a/foo.txt\n"
+            + "+++ b/foo.txt\n"
+            + "@@ -9,3 +9,3 @@ section\n"
+            + " one\r\n"
+            + "-two\n"
+            + "+2\n"
+            + " three";
+
+    @Test
+    public void plainText() throws Exception {
+        StringWriter out = new StringWriter();
+        new UDiffPrinter(out, false).print(new StringReader(DIFF));
+
+        assertEquals(out.toString(), ""
+                + "            | --- a/foo.txt\n"
+                + "            | +++ b/foo.txt\n"
+                + "            | @@ -9,3 +9,3 @@ section\n"
+                + "    9     9 |  one\n"
+                + "   10       | -two\n"
+                + "         10 | +2\n"
+                + "   11    11 |  three\n");
+    }
+
+    @Test
+    public void ansiColors() throws Exception {
+        StringWriter out = new StringWriter();
+        new UDiffPrinter(out, true).print(new StringReader("@@ -1 +1 @@ foo\n-bar\n"));
+
+        assertEquals(out.toString(), ""
+                + "\033[36m            | \033[m\033[36m@@ -1 +1 @@\033[m foo\n"
+                + "\033[31m    1       | \033[m\033[31m-bar\033[m\n");
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+package stanio.diffview.udiff;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class WordDiffTest {
+
+    @Test
+    public void changedWords() throws Exception {
+        String removed = " int count = items.size();\n";
+        String added = " long count = items.length;\n";
+        WordDiff diff = WordDiff.compute(removed, added);
+
+        assertEquals(changed(removed, diff.getRemovedRanges()), "[int][size()]");
+        assertEquals(changed(added, diff.getAddedRanges()), "[long][length]");
+    }
+
+    @Test
+    public void multipleLines() throws Exception {
+        String removed = " foo bar\n baz\n";
+        String added = " foo qux\n baz quux\n";
+        WordDiff diff = WordDiff.compute(removed, added);
+
+        assertEquals(changed(removed, diff.getRemovedRanges()), "[bar]");
+        assertEquals(changed(added, diff.getAddedRanges()), "[qux][ quux]");
+    }
+
+    @Test
+    public void equalText() throws Exception {
+        WordDiff diff = WordDiff.compute(" same\n", " same\n");
+        assertTrue(diff.isEmpty(), "isEmpty");
+    }
+
+    @Test
+    public void tooManyEdits() throws Exception {
+        StringBuilder removed = new StringBuilder();
+        StringBuilder added = new StringBuilder();
+        for (int i = 0; i < WordDiff.MAX_EDITS; i++) {
+            removed.append(" a").append(i);
+            added.append(" b").append(i);
+        }
+        WordDiff diff = WordDiff.compute(removed, added);
+        assertTrue(diff.isEmpty(), "isEmpty");
+    }
+
+    private static String changed(String text, int[] ranges) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < ranges.length; i += 2) {
+            buf.append('[').append(text, ranges[i], ranges[i + 1]).append(']');
+        }
+        return buf.toString();
+    }
+
+}